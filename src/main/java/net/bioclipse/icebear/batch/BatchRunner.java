@@ -0,0 +1,185 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.openscience.cdk.CDKConstants;
+
+import net.bioclipse.cdk.domain.ICDKMolecule;
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.core.domain.IMolecule.Property;
+import net.bioclipse.icebear.business.Entry;
+import net.bioclipse.icebear.io.JSON;
+import net.bioclipse.managers.IcebearManager;
+import net.bioclipse.rdf.business.IRDFStore;
+
+/**
+ * Runs all molecules of a file through {@link IcebearManager#findInfo(net.bioclipse.core.domain.IMolecule)}
+ * and writes one JSON line per molecule, in input order. At most <code>inFlight</code> molecules are
+ * being crawled or waiting to be written at any time, so that memory use does not depend on the size
+ * of the input. After each written line a checkpoint is saved next to the output file, and a next run
+ * with the same output file continues after the last written molecule.
+ */
+public class BatchRunner {
+
+	private IcebearManager icebear;
+	private int inFlight;
+
+	private Writer writer;
+	private FileOutputStream output;
+	private Checkpoint checkpoint;
+	private Semaphore slots;
+	private Map<Long,String> finished = new HashMap<Long, String>();
+	private long nextToWrite;
+	private IOException writeError;
+	private boolean stopped = false;
+
+	public BatchRunner(IcebearManager icebear, int inFlight) {
+		this.icebear = icebear;
+		this.inFlight = Math.max(1, inFlight);
+	}
+
+	/**
+	 * Processes the molecules in the input file.
+	 *
+	 * @return the number of molecules written during this run
+	 */
+	public long run(File input, File jsonLines) throws BioclipseException {
+		checkpoint = new Checkpoint(new File(jsonLines.getPath() + ".checkpoint"));
+		ExecutorService executor = Executors.newFixedThreadPool(inFlight);
+		slots = new Semaphore(inFlight);
+		long index = 0;
+		try {
+			checkpoint.load();
+			if (jsonLines.length() < checkpoint.outputLength) {
+				// otherwise the molecules of the missing lines would silently be skipped
+				throw new BioclipseException("The output file is missing or shorter than " + checkpoint.outputLength
+					+ " bytes, as recorded in its checkpoint; remove the checkpoint to start again");
+			}
+			output = new FileOutputStream(jsonLines, true);
+			// drop anything written after the last checkpoint, so that no molecule is reported twice
+			output.getChannel().truncate(checkpoint.outputLength);
+			writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+			nextToWrite = checkpoint.molecules;
+			long resumedAt = nextToWrite;
+
+			MoleculeReader reader = new MoleculeReader(input);
+			try {
+				while (reader.hasNext()) {
+					final ICDKMolecule mol = reader.next();
+					final long molIndex = index++;
+					if (molIndex < resumedAt) continue; // done in an earlier run
+					slots.acquire();
+					synchronized (this) {
+						if (writeError != null) throw writeError;
+					}
+					executor.submit(new Runnable() {
+						public void run() {
+							String line;
+							try {
+								String readError = MoleculeReader.getReadError(mol);
+								line = readError != null ? errorLine(molIndex, readError) : process(molIndex, mol);
+							} catch (Throwable error) {
+								// also for errors, as the slot of a molecule is only released once it is written
+								line = errorLine(molIndex, String.valueOf(error));
+							}
+							completed(molIndex, line);
+						}
+					});
+				}
+			} finally {
+				reader.close();
+			}
+			slots.acquire(inFlight); // wait for the last molecules to be written
+			synchronized (this) {
+				if (writeError != null) throw writeError;
+				return nextToWrite - resumedAt;
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new BioclipseException("Interrupted at molecule " + nextToWrite, exception);
+		} catch (Exception exception) {
+			throw new BioclipseException("Error while processing " + input + ": " + exception.getMessage(), exception);
+		} finally {
+			synchronized (this) {
+				// molecules still being crawled are not written, so that a next run does them again
+				stopped = true;
+				try {
+					if (writer != null) writer.close();
+				} catch (IOException exception) {
+					System.out.println("Error while closing " + jsonLines + ": " + exception.getMessage());
+				}
+			}
+			executor.shutdownNow();
+		}
+	}
+
+	String process(long index, ICDKMolecule mol) {
+		StringBuilder line = new StringBuilder();
+		line.append("{\"index\":").append(index);
+		Object title = mol.getAtomContainer().getProperty(CDKConstants.TITLE);
+		line.append(",\"title\":").append(JSON.quote(title == null ? null : title.toString()));
+		try {
+			line.append(",\"inchikey\":").append(JSON.quote(mol.getInChIKey(Property.USE_CACHED_OR_CALCULATED)));
+			List<Entry> entries = new ArrayList<Entry>();
+			for (IRDFStore store : icebear.findInfo(mol)) {
+				entries.addAll(icebear.getProperties(store));
+			}
+			line.append(",\"entries\":").append(JSON.asJSON(entries));
+		} catch (Exception exception) {
+			line.append(",\"error\":").append(JSON.quote(String.valueOf(exception.getMessage())));
+		}
+		return line.append('}').toString();
+	}
+
+	private static String errorLine(long index, String error) {
+		return "{\"index\":" + index + ",\"error\":" + JSON.quote(error) + "}";
+	}
+
+	/**
+	 * Writes all results that are next in line, and saves the checkpoint.
+	 */
+	private synchronized void completed(long index, String line) {
+		if (stopped) return;
+		finished.put(index, line);
+		try {
+			int written = 0;
+			while (finished.containsKey(nextToWrite)) {
+				writer.write(finished.remove(nextToWrite));
+				writer.write('\n');
+				nextToWrite++;
+				written++;
+			}
+			if (written > 0) {
+				writer.flush();
+				checkpoint.save(nextToWrite, output.getChannel().position());
+				slots.release(written);
+			}
+		} catch (IOException exception) {
+			writeError = exception;
+			slots.release(inFlight);
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Records how many molecules of a batch have been written, and how long the
+ * output file was at that point, so that an interrupted run can resume.
+ */
+class Checkpoint {
+
+	private File file;
+	long molecules = 0;
+	long outputLength = 0;
+
+	Checkpoint(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Reads the checkpoint, if one exists.
+	 */
+	Checkpoint load() throws IOException {
+		if (!file.exists()) return this;
+		String[] fields = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim().split("\\s+");
+		if (fields.length == 2) {
+			molecules = Long.parseLong(fields[0]);
+			outputLength = Long.parseLong(fields[1]);
+		}
+		return this;
+	}
+
+	void save(long molecules, long outputLength) throws IOException {
+		this.molecules = molecules;
+		this.outputLength = outputLength;
+		File tmp = new File(file.getPath() + ".tmp");
+		Files.write(tmp.toPath(), (molecules + " " + outputLength + "\n").getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
@@ -0,0 +1,150 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.batch;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.iterator.IteratingSDFReader;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import net.bioclipse.cdk.domain.CDKMolecule;
+import net.bioclipse.cdk.domain.ICDKMolecule;
+
+/**
+ * Reads molecules one at a time from an SD file or a SMILES file, where the latter
+ * has one SMILES per line, optionally followed by whitespace and a title. Records that
+ * cannot be read give an empty molecule with the reason, see {@link #getReadError(ICDKMolecule)},
+ * so that the position of later molecules stays the same.
+ */
+class MoleculeReader implements Iterator<ICDKMolecule>, Closeable {
+
+	private static final String READ_ERROR = "net.bioclipse.icebear.readError";
+
+	private BufferedReader reader;
+	private boolean isSDF;
+	private SmilesParser smilesParser;
+	private ICDKMolecule next;
+	private long lineNumber = 0;
+
+	MoleculeReader(File file) throws IOException {
+		this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(".smi") || name.endsWith(".smiles") || name.endsWith(".txt")) {
+			this.smilesParser = new SmilesParser(SilentChemObjectBuilder.getInstance());
+		} else {
+			this.isSDF = true;
+		}
+	}
+
+	/**
+	 * Returns why the molecule could not be read, or null for molecules read without problems.
+	 */
+	static String getReadError(ICDKMolecule mol) {
+		Object error = mol.getAtomContainer().getProperty(READ_ERROR);
+		return error == null ? null : error.toString();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null) return true;
+		try {
+			next = isSDF ? readSDF() : readSMILES();
+		} catch (IOException exception) {
+			throw new IllegalStateException("Error while reading the molecules: " + exception.getMessage(), exception);
+		}
+		return next != null;
+	}
+
+	@Override
+	public ICDKMolecule next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		ICDKMolecule mol = next;
+		next = null;
+		return mol;
+	}
+
+	/**
+	 * Reads the next $$$$-delimited record on its own, so that a broken record does not
+	 * end the file, as it would for a single {@link IteratingSDFReader}.
+	 */
+	private ICDKMolecule readSDF() throws IOException {
+		StringBuilder record = new StringBuilder();
+		long firstLine = lineNumber + 1;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			record.append(line).append('\n');
+			if (line.trim().equals("$$$$")) break;
+		}
+		if (record.toString().trim().length() == 0) return null;
+
+		IteratingSDFReader sdfReader = new IteratingSDFReader(
+			new StringReader(record.toString()), SilentChemObjectBuilder.getInstance()
+		);
+		try {
+			if (sdfReader.hasNext()) return new CDKMolecule(sdfReader.next());
+		} finally {
+			sdfReader.close();
+		}
+		return unreadable("record at line " + firstLine + " is not a valid molfile");
+	}
+
+	private ICDKMolecule readSMILES() throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#")) continue;
+			String[] fields = line.split("\\s+", 2);
+			try {
+				IAtomContainer container = smilesParser.parseSmiles(fields[0]);
+				if (fields.length > 1) container.setProperty(CDKConstants.TITLE, fields[1]);
+				return new CDKMolecule(container);
+			} catch (InvalidSmilesException exception) {
+				return unreadable("line " + lineNumber + ": " + exception.getMessage());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns an empty molecule in place of one that could not be read, to keep the position
+	 * of later molecules stable, so that checkpoints stay valid.
+	 */
+	private static ICDKMolecule unreadable(String reason) {
+		IAtomContainer empty = SilentChemObjectBuilder.getInstance().newAtomContainer();
+		empty.setProperty(READ_ERROR, reason);
+		return new CDKMolecule(empty);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
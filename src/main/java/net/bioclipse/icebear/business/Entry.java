@@ -40,4 +40,22 @@ public class Entry {
 		return this;
 	}
 
+	/**
+	 * Returns the value of a literal without its datatype, e.g. "1.2" for "1.2^^xsd:double".
+	 */
+	public static String stripDataType(String id) {
+		if (id == null) return null;
+		if (id.contains("^^"))
+			return id.substring(0, id.indexOf("^^"));
+		return id;
+	}
+
+	/**
+	 * Returns the datatype of a literal, or null when it has none.
+	 */
+	public static String getDataType(String id) {
+		if (id == null || !id.contains("^^")) return null;
+		return id.substring(id.indexOf("^^") + 2);
+	}
+
 }
@@ -0,0 +1,270 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.business;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of resources found to be the same thing, via links like owl:sameAs, kept in the
+ * workspace so that later crawls can start with all known identities of a molecule at
+ * once. The links are stored as a tab-separated file of the two URIs, the provenance
+ * (the extractor that found the link) and the time it was last seen. Links older than
+ * the maximum age are dropped, both when the file is read and when they age while in
+ * memory.
+ *
+ * <p>Saving appends the links found since the last save, so a link seen again is in the
+ * file more than once, the last time being the one that counts. The file is only
+ * rewritten when it has grown to twice the number of links, or stale links were dropped.
+ *
+ * <p>In memory the resources are clustered with a union-find structure, and the members
+ * of each cluster are kept in a circular list, so that a cluster can be listed without
+ * looking at other resources.
+ */
+public class IdentityIndex {
+
+	private File file;
+	private long maxAge;
+	private boolean loaded = false;
+	private boolean rewrite = false;
+	private int linesInFile = 0;
+	private long oldestLink = Long.MAX_VALUE;
+
+	private Map<String,Edge> edges = new LinkedHashMap<String, Edge>();
+	private List<Edge> unsaved = new ArrayList<Edge>();
+	private Map<String,Integer> ids = new HashMap<String, Integer>();
+	private List<String> uris = new ArrayList<String>();
+	private int[] parent = new int[256];
+	private int[] size = new int[256];
+	private int[] next = new int[256];
+
+	static class Edge {
+		String from;
+		String to;
+		String provenance;
+		long lastSeen;
+
+		Edge(String from, String to, String provenance, long lastSeen) {
+			this.from = from;
+			this.to = to;
+			this.provenance = provenance;
+			this.lastSeen = lastSeen;
+		}
+	}
+
+	/**
+	 * @param file   file to keep the links in
+	 * @param maxAge time in milliseconds after which a link is no longer trusted
+	 */
+	public IdentityIndex(File file, long maxAge) {
+		this.file = file;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Changes the maximum age, e.g. when the fetch policy changed. Links already dropped
+	 * because of an earlier, shorter age are not read again.
+	 */
+	public synchronized void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Records that the two resources are the same thing.
+	 *
+	 * @param provenance what found the link, e.g. the name of the extractor
+	 */
+	public synchronized void addLink(String from, String to, String provenance) {
+		load();
+		if (from.equals(to)) return;
+		Edge edge = new Edge(from, to, provenance, System.currentTimeMillis());
+		add(edge);
+		unsaved.add(edge);
+	}
+
+	/**
+	 * Returns all resources known to be the same as the given one, including that resource itself.
+	 */
+	public synchronized List<String> getCluster(String uri) {
+		load();
+		dropStaleLinks();
+		Integer id = ids.get(uri);
+		if (id == null) return new ArrayList<String>(Arrays.asList(uri));
+		List<String> cluster = new ArrayList<String>();
+		int member = id;
+		do {
+			cluster.add(uris.get(member));
+			member = next[member];
+		} while (member != id);
+		return cluster;
+	}
+
+	public synchronized int getLinkCount() {
+		load();
+		dropStaleLinks();
+		return edges.size();
+	}
+
+	/**
+	 * Appends the links added since the last save to the file, or rewrites the file
+	 * when it has too many old or duplicate lines.
+	 */
+	public synchronized void save() throws IOException {
+		if (rewrite || linesInFile + unsaved.size() > 2 * edges.size()) {
+			rewrite();
+		} else if (!unsaved.isEmpty()) {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+			try {
+				for (Edge edge : unsaved) write(writer, edge);
+			} finally {
+				writer.close();
+			}
+			linesInFile += unsaved.size();
+			unsaved.clear();
+		}
+	}
+
+	private void rewrite() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
+		try {
+			for (Edge edge : edges.values()) write(writer, edge);
+		} finally {
+			writer.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		linesInFile = edges.size();
+		unsaved.clear();
+		rewrite = false;
+	}
+
+	private static void write(Writer writer, Edge edge) throws IOException {
+		writer.write(edge.from + "\t" + edge.to + "\t" + edge.provenance + "\t" + edge.lastSeen + "\n");
+	}
+
+	private void load() {
+		if (loaded) return;
+		loaded = true;
+		if (!file.exists()) return;
+		long oldest = System.currentTimeMillis() - maxAge;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					linesInFile++;
+					String[] fields = line.split("\t");
+					if (fields.length != 4 || !fields[3].matches("[0-9]+")) {
+						rewrite = true; // e.g. a line cut short when the process died while appending
+						continue;
+					}
+					long lastSeen = Long.parseLong(fields[3]);
+					if (maxAge > 0 && lastSeen < oldest) {
+						rewrite = true; // so that the stale link is removed from the file
+						continue;
+					}
+					add(new Edge(fields[0], fields[1], fields[2], lastSeen));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (Exception exception) {
+			System.out.println("Error while reading the identity index " + file + ": " + exception.getMessage());
+		}
+	}
+
+	private void add(Edge edge) {
+		String key = edge.from + "\t" + edge.to;
+		Edge known = edges.get(key);
+		if (known != null && known.lastSeen > edge.lastSeen) return; // e.g. an older line in the file
+		edges.put(key, edge);
+		oldestLink = Math.min(oldestLink, edge.lastSeen);
+		union(idFor(edge.from), idFor(edge.to));
+	}
+
+	/**
+	 * Removes links that became older than the maximum age since they were read or found,
+	 * and clusters the remaining ones again, as clusters cannot be split.
+	 */
+	private void dropStaleLinks() {
+		if (maxAge <= 0) return;
+		long oldest = System.currentTimeMillis() - maxAge;
+		if (oldestLink >= oldest) return;
+		List<Edge> remaining = new ArrayList<Edge>();
+		for (Edge edge : edges.values()) {
+			if (edge.lastSeen >= oldest) remaining.add(edge);
+		}
+		edges.clear();
+		ids.clear();
+		uris.clear();
+		oldestLink = Long.MAX_VALUE;
+		for (Edge edge : remaining) add(edge);
+		rewrite = true;
+	}
+
+	private int idFor(String uri) {
+		Integer id = ids.get(uri);
+		if (id != null) return id;
+		id = uris.size();
+		if (id == parent.length) {
+			parent = Arrays.copyOf(parent, id * 2);
+			size = Arrays.copyOf(size, id * 2);
+			next = Arrays.copyOf(next, id * 2);
+		}
+		uris.add(uri);
+		ids.put(uri, id);
+		parent[id] = id;
+		size[id] = 1;
+		next[id] = id;
+		return id;
+	}
+
+	private int find(int id) {
+		while (parent[id] != id) {
+			parent[id] = parent[parent[id]]; // path halving
+			id = parent[id];
+		}
+		return id;
+	}
+
+	private void union(int one, int other) {
+		int rootOne = find(one);
+		int rootOther = find(other);
+		if (rootOne == rootOther) return;
+		if (size[rootOne] < size[rootOther]) {
+			int swap = rootOne;
+			rootOne = rootOther;
+			rootOther = swap;
+		}
+		parent[rootOther] = rootOne;
+		size[rootOne] += size[rootOther];
+		// splice the two circular member lists
+		int swap = next[one];
+		next[one] = next[other];
+		next[other] = swap;
+	}
+
+}
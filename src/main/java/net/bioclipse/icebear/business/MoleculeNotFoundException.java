@@ -0,0 +1,26 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.business;
+
+import net.bioclipse.core.business.BioclipseException;
+
+/**
+ * Thrown when Wikidata has no molecule for an InChIKey, as opposed to errors
+ * while asking Wikidata.
+ */
+public class MoleculeNotFoundException extends BioclipseException {
+
+	private static final long serialVersionUID = 4207946581295812270L;
+
+	public MoleculeNotFoundException(String message) {
+		super(message);
+	}
+
+}
@@ -21,11 +21,38 @@ import net.bioclipse.rdf.business.IRDFStore;
 
 public class AbstractExtractor {
 
-	protected RDFManager rdf = new RDFManager(".");
+	private static volatile RDFManager defaultRDF;
+
+	/**
+	 * The RDFManager of the IcebearManager this extractor was added to, or null before that,
+	 * in which case {@link #rdf()} returns a shared one.
+	 */
+	protected volatile RDFManager rdf;
+
+	/**
+	 * Sets the RDFManager to use, normally the one of the IcebearManager this extractor belongs to.
+	 */
+	public void setRDFManager(RDFManager rdf) {
+		this.rdf = rdf;
+	}
+
+	/**
+	 * Returns the RDFManager set for this extractor, or else one shared by all extractors.
+	 */
+	protected RDFManager rdf() {
+		RDFManager manager = this.rdf;
+		if (manager != null) return manager;
+		if (defaultRDF == null) {
+			synchronized (AbstractExtractor.class) {
+				if (defaultRDF == null) defaultRDF = new RDFManager(".");
+			}
+		}
+		return defaultRDF;
+	}
 
 	protected List<String> getPredicate(IRDFStore store, String resource, String predicate) {
 		try {
-			return rdf.getForPredicate(store, resource, predicate);
+			return rdf().getForPredicate(store, resource, predicate);
 		} catch (Throwable exception) {
 			exception.printStackTrace();
 		};
@@ -34,7 +61,7 @@ public class AbstractExtractor {
 
 	protected List<String> allOwlSameAs(IRDFStore store, String resource) {
 		try {
-			return rdf.allOwlSameAs(store, resource);
+			return rdf().allOwlSameAs(store, resource);
 		} catch (Throwable exception) {
 			exception.printStackTrace();
 		}
@@ -43,7 +70,7 @@ public class AbstractExtractor {
 
 	protected List<String> allOwlEquivalentClass(IRDFStore store, String resource) {
 		try {
-			return rdf.allOwlEquivalentClass(store, resource);
+			return rdf().allOwlEquivalentClass(store, resource);
 		} catch (Throwable exception) {
 			exception.printStackTrace();
 		}
@@ -52,7 +79,7 @@ public class AbstractExtractor {
 
 	protected List<String> allSkosExactmatch(IRDFStore store, String resource) {
 		try {
-			return rdf.getForPredicate(
+			return rdf().getForPredicate(
 				store, resource, "http://www.w3.org/2004/02/skos/core#exactMatch"
 			);
 		} catch (Throwable exception) {
@@ -63,7 +90,7 @@ public class AbstractExtractor {
 
 	protected StringMatrix sparql(IRDFStore store, String query) {
 		try {
-			return rdf.sparql(store, query);
+			return rdf().sparql(store, query);
 		} catch (Throwable exception) {
 			exception.printStackTrace();
 		};
@@ -87,8 +114,6 @@ public class AbstractExtractor {
 	}
 
 	protected String stripDataType(String id) {
-		if (id.contains("^^"))
-			return id.substring(0, id.indexOf("^^"));
-		return id;
+		return Entry.stripDataType(id);
 	}
 }
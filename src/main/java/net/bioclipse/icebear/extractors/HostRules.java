@@ -0,0 +1,283 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.extractors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Rules deciding which links found by the {@link INextURIExtractor}s are followed. Each line
+ * of a rule file has one rule:
+ *
+ * <pre>
+ * deny    host[/pathPrefix] [from sourceHost]
+ * allow   host[/pathPrefix] [from sourceHost]
+ * rewrite host[/pathPrefix] targetHost [from sourceHost]
+ * label-deny  host[/pathPrefix]
+ * label-allow host[/pathPrefix]
+ * </pre>
+ *
+ * A host matches itself and all its subdomains, and a host starting with a dot only its
+ * subdomains. The source host is that of the resource in which the link was found. When
+ * more rules match a link, the most specific one is used: the one with the longest host,
+ * then the longest path prefix, then one with a source host. Links matching no rule are
+ * followed. Hosts are matched case-insensitively, path prefixes case-sensitively. A
+ * rewritten link is checked against the rules again. The hosts are compiled into a trie of reversed host labels, so that a link is
+ * checked in time proportional to the length of its host.
+ *
+ * <p>The <code>label-</code> rules are kept apart from the others and only decide for
+ * which resources a label is looked up online, see {@link #isLabelAllowed(String)}.
+ */
+public class HostRules {
+
+	private static final String RESOURCE = "/net/bioclipse/icebear/hostrules.txt";
+	private static final int MAX_REWRITES = 4;
+
+	enum Action {
+		ALLOW, DENY, REWRITE, LABEL_ALLOW(true), LABEL_DENY(true);
+
+		final boolean forLabels;
+
+		Action() {
+			this(false);
+		}
+
+		Action(boolean forLabels) {
+			this.forLabels = forLabels;
+		}
+	}
+
+	static class Rule {
+		Action action;
+		int depth;
+		boolean subdomainsOnly;
+		String pathPrefix;
+		String sourceHost;
+		String target;
+
+		boolean moreSpecificThan(Rule other) {
+			if (other == null) return true;
+			if (depth != other.depth) return depth > other.depth;
+			if (pathPrefix.length() != other.pathPrefix.length()) return pathPrefix.length() > other.pathPrefix.length();
+			return sourceHost != null && other.sourceHost == null;
+		}
+	}
+
+	private static class Node {
+		Map<String,Node> children = new HashMap<String, Node>();
+		List<Rule> rules = new ArrayList<Rule>();
+	}
+
+	private Node root = new Node();
+	private int size = 0;
+
+	private static class DefaultHolder {
+		static final HostRules INSTANCE = loadDefault();
+	}
+
+	/**
+	 * Returns the rules shipped with Isbjørn.
+	 */
+	public static HostRules getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	private static HostRules loadDefault() {
+		InputStream stream = HostRules.class.getResourceAsStream(RESOURCE);
+		if (stream == null) return new HostRules();
+		try {
+			return parse(new InputStreamReader(stream, StandardCharsets.UTF_8));
+		} catch (IOException exception) {
+			System.out.println("Could not read the default host rules: " + exception.getMessage());
+			return new HostRules();
+		}
+	}
+
+	public static HostRules parse(Reader input) throws IOException {
+		HostRules rules = new HostRules();
+		BufferedReader reader = new BufferedReader(input);
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				int comment = line.indexOf('#');
+				if (comment >= 0) line = line.substring(0, comment);
+				line = line.trim();
+				if (line.length() == 0) continue;
+				try {
+					rules.add(line);
+				} catch (IllegalArgumentException exception) {
+					throw new IOException("Error in host rule on line " + lineNumber + ": " + exception.getMessage());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return rules;
+	}
+
+	/**
+	 * Adds a single rule, in the syntax of the rule files.
+	 */
+	public void add(String line) {
+		String[] fields = line.trim().split("\\s+");
+		if (fields.length < 2) throw new IllegalArgumentException("Expected an action and a host: " + line);
+		Rule rule = new Rule();
+		try {
+			rule.action = Action.valueOf(fields[0].toUpperCase(Locale.ROOT).replace('-', '_'));
+		} catch (IllegalArgumentException exception) {
+			throw new IllegalArgumentException("Unknown action: " + fields[0]);
+		}
+		int next = 2;
+		if (rule.action == Action.REWRITE) {
+			if (fields.length < 3) throw new IllegalArgumentException("Expected a target host: " + line);
+			rule.target = fields[2];
+			next = 3;
+		}
+		if (fields.length == next + 2 && "from".equals(fields[next]) && !rule.action.forLabels) {
+			rule.sourceHost = fields[next + 1].toLowerCase(Locale.ROOT);
+		} else if (fields.length != next) {
+			throw new IllegalArgumentException("Unexpected fields: " + line);
+		}
+
+		String pattern = fields[1];
+		int slash = pattern.indexOf('/');
+		String host = ((slash < 0) ? pattern : pattern.substring(0, slash)).toLowerCase(Locale.ROOT);
+		rule.pathPrefix = (slash < 0) ? "" : pattern.substring(slash);
+		if (host.startsWith(".")) {
+			rule.subdomainsOnly = true;
+			host = host.substring(1);
+		}
+		String[] labels = host.split("\\.");
+		Node node = root;
+		for (int i = labels.length - 1; i >= 0; i--) {
+			Node child = node.children.get(labels[i]);
+			if (child == null) {
+				child = new Node();
+				node.children.put(labels[i], child);
+			}
+			node = child;
+		}
+		rule.depth = labels.length;
+		node.rules.add(rule);
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the link to follow, which may be rewritten, or null when the link must not be followed.
+	 *
+	 * @param source the resource in which the link was found, or null
+	 * @param link   the link found
+	 */
+	public String apply(String source, String link) {
+		String sourceHost = hostOf(source);
+		for (int rewrites = 0; rewrites <= MAX_REWRITES; rewrites++) {
+			URI uri;
+			try {
+				uri = new URI(link);
+			} catch (Exception exception) {
+				return link; // leave it to the workload to reject it
+			}
+			if (uri.getHost() == null) return link;
+			Rule best = find(uri, sourceHost, false);
+			if (best == null || best.action == Action.ALLOW) return link;
+			if (best.action == Action.DENY) return null;
+			String rewritten = rewrite(uri, best.target);
+			if (rewritten.equals(link)) return link; // e.g. rewritten to a subdomain of the rule
+			link = rewritten;
+		}
+		System.out.println("Not following " + link + ", as the host rules keep rewriting it");
+		return null;
+	}
+
+	/**
+	 * Returns false when no label is to be looked up online for the resource.
+	 */
+	public boolean isLabelAllowed(String resource) {
+		URI uri;
+		try {
+			uri = new URI(resource);
+		} catch (Exception exception) {
+			return true;
+		}
+		if (uri.getHost() == null) return true;
+		Rule best = find(uri, null, true);
+		return best == null || best.action != Action.LABEL_DENY;
+	}
+
+	private Rule find(URI uri, String sourceHost, boolean forLabels) {
+		String host = uri.getHost().toLowerCase(Locale.ROOT);
+		String path = (uri.getRawPath() == null) ? "" : uri.getRawPath();
+		Rule best = null;
+		Node node = root;
+		int end = host.length();
+		while (end > 0 && node != null) {
+			int start = host.lastIndexOf('.', end - 1);
+			node = node.children.get(host.substring(start + 1, end));
+			end = start;
+			if (node == null) break;
+			for (Rule rule : node.rules) {
+				if (rule.action.forLabels != forLabels) continue;
+				if (rule.subdomainsOnly && end <= 0) continue;
+				if (!path.startsWith(rule.pathPrefix)) continue;
+				if (rule.sourceHost != null && !matchesHost(sourceHost, rule.sourceHost)) continue;
+				if (rule.moreSpecificThan(best)) best = rule;
+			}
+		}
+		return best;
+	}
+
+	private static String rewrite(URI uri, String target) {
+		String scheme = uri.getScheme();
+		String host = target;
+		int separator = target.indexOf("://");
+		if (separator > 0) {
+			scheme = target.substring(0, separator);
+			host = target.substring(separator + 3);
+		}
+		StringBuilder rewritten = new StringBuilder(scheme).append("://").append(host);
+		if (uri.getRawPath() != null) rewritten.append(uri.getRawPath());
+		if (uri.getRawQuery() != null) rewritten.append('?').append(uri.getRawQuery());
+		if (uri.getRawFragment() != null) rewritten.append('#').append(uri.getRawFragment());
+		return rewritten.toString();
+	}
+
+	private static boolean matchesHost(String host, String pattern) {
+		if (host == null) return false;
+		if (pattern.startsWith(".")) return host.endsWith(pattern);
+		return host.equals(pattern) || host.endsWith("." + pattern);
+	}
+
+	private static String hostOf(String uri) {
+		if (uri == null) return null;
+		try {
+			String host = new URI(uri).getHost();
+			return host == null ? null : host.toLowerCase(Locale.ROOT);
+		} catch (Exception exception) {
+			return null;
+		}
+	}
+
+}
@@ -9,7 +9,6 @@
  */
 package net.bioclipse.icebear.extractors.links;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import net.bioclipse.icebear.extractors.AbstractExtractor;
@@ -20,12 +19,8 @@ public class OwlEquivalentClassExtractor extends AbstractExtractor implements IN
 
 	@Override
 	public List<String> extractURIs(IRDFStore store, String resource) {
-		List<String> sameResources = allOwlEquivalentClass(store, resource);
-		List<String> properResources = new ArrayList<String>();
-		for (String sameResource : sameResources) {
-			if (!sameResource.contains("dbpedia.org")) properResources.add(sameResource);
-		}
-		return properResources;
+		// which of these are followed is decided by the HostRules
+		return allOwlEquivalentClass(store, resource);
 	}
 
 }
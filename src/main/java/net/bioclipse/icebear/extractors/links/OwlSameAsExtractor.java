@@ -9,7 +9,6 @@
  */
 package net.bioclipse.icebear.extractors.links;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import net.bioclipse.icebear.extractors.AbstractExtractor;
@@ -20,20 +19,8 @@ public class OwlSameAsExtractor extends AbstractExtractor implements INextURIExt
 
 	@Override
 	public List<String> extractURIs(IRDFStore store, String resource) {
-		List<String> sameResources = allOwlSameAs(store, resource);
-		List<String> properResources = new ArrayList<String>();
-		for (String sameResource : sameResources) {
-			// dirty hack #1: if on DBPedia, ignore translations
-			if (resource.startsWith("http://dbpedia.org/") &&
-				sameResource.contains(".dbpedia.org")) continue;
-			// dirty hack #2: if on FreeBase, ignore any DBPedia
-			if (resource.startsWith("http://rdf.freebase.com/") &&
-				sameResource.contains("dbpedia.org")) continue;
-
-			// else: OK, check it out
-			properResources.add(sameResource);
-		}
-		return properResources;
+		// which of these are followed is decided by the HostRules
+		return allOwlSameAs(store, resource);
 	}
 
 
@@ -0,0 +1,159 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Time limits used while dereferencing URIs. All times are in milliseconds,
+ * and a value of zero or less disables the corresponding limit.
+ */
+public class FetchPolicy {
+
+	private int connectTimeout = 5000;
+	private int readTimeout = 15000;
+	private long totalTimeout = 30000;
+	private long crawlTimeout = 0;
+	private long sharedRetention = 30000;
+	private int parallelFetches = 8;
+	private int parallelFetchesPerHost = 2;
+	private long identityMaxAge = 30L * 24 * 60 * 60 * 1000;
+
+	/** Latency percentile of earlier requests to the same host after which a hedged request is sent. */
+	private double hedgePercentile = 0.95;
+	private long minimalHedgeDelay = 250;
+
+	/** Alternative URI prefixes to use for a hedged request, e.g. a mirror. */
+	private Map<String,String> mirrors = new HashMap<String, String>() {
+		private static final long serialVersionUID = -2103981873451203776L;
+	{
+		put("http://www.wikidata.org/entity/", "https://www.wikidata.org/entity/");
+	}};
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public long getTotalTimeout() {
+		return totalTimeout;
+	}
+
+	public void setTotalTimeout(long totalTimeout) {
+		this.totalTimeout = totalTimeout;
+	}
+
+	/**
+	 * The time after which a crawl stops and returns whatever it has found so far.
+	 */
+	public long getCrawlTimeout() {
+		return crawlTimeout;
+	}
+
+	public void setCrawlTimeout(long crawlTimeout) {
+		this.crawlTimeout = crawlTimeout;
+	}
+
+	/**
+	 * The time a downloaded and parsed URI is kept for other crawls asking for the same URI.
+	 */
+	public long getSharedRetention() {
+		return sharedRetention;
+	}
+
+	public void setSharedRetention(long sharedRetention) {
+		this.sharedRetention = sharedRetention;
+	}
+
+	/**
+	 * The number of scheduled URIs dereferenced at the same time within one crawl,
+	 * e.g. the identities of a molecule known from earlier crawls.
+	 */
+	public int getParallelFetches() {
+		return parallelFetches;
+	}
+
+	public void setParallelFetches(int parallelFetches) {
+		this.parallelFetches = parallelFetches;
+	}
+
+	/**
+	 * The number of those parallel fetches that may go to the same host, so that a crawl
+	 * does not send all of them to one server.
+	 */
+	public int getParallelFetchesPerHost() {
+		return parallelFetchesPerHost;
+	}
+
+	public void setParallelFetchesPerHost(int parallelFetchesPerHost) {
+		this.parallelFetchesPerHost = parallelFetchesPerHost;
+	}
+
+	/**
+	 * The time after which a link in the identity index is no longer trusted, and
+	 * has to be found again by crawling. The default is 30 days.
+	 */
+	public long getIdentityMaxAge() {
+		return identityMaxAge;
+	}
+
+	public void setIdentityMaxAge(long identityMaxAge) {
+		this.identityMaxAge = identityMaxAge;
+	}
+
+	public double getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	/**
+	 * Sets the latency percentile, between 0 and 1, after which a second request is fired.
+	 * Use a value of 1 or more to disable hedging.
+	 */
+	public void setHedgePercentile(double hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	public long getMinimalHedgeDelay() {
+		return minimalHedgeDelay;
+	}
+
+	public void setMinimalHedgeDelay(long minimalHedgeDelay) {
+		this.minimalHedgeDelay = minimalHedgeDelay;
+	}
+
+	public Map<String,String> getMirrors() {
+		return mirrors;
+	}
+
+	/**
+	 * Returns the URI to use for a hedged request, which is the same URI
+	 * when no mirror is known.
+	 */
+	public String getAlternative(String uri) {
+		for (Map.Entry<String,String> mirror : mirrors.entrySet()) {
+			if (uri.startsWith(mirror.getKey()))
+				return mirror.getValue() + uri.substring(mirror.getKey().length());
+		}
+		return uri;
+	}
+
+}
@@ -0,0 +1,50 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+/**
+ * Class to hold the content downloaded for a single URI.
+ */
+public class FetchResult {
+
+	/** The URI that was requested, which may differ from the one that answered. */
+	public String uri;
+
+	public String contentType;
+	public byte[] content;
+	public long fetchedAt;
+	public long latency;
+
+	public FetchResult(String uri, String contentType, byte[] content, long fetchedAt, long latency) {
+		super();
+		this.uri = uri;
+		this.contentType = contentType;
+		this.content = content;
+		this.fetchedAt = fetchedAt;
+		this.latency = latency;
+	}
+
+	/**
+	 * Returns the Jena serialization name for the content type of this result.
+	 */
+	public String getFormat() {
+		if (contentType == null) return "RDF/XML";
+		String type = contentType.toLowerCase();
+		if (type.contains("turtle")) return "TURTLE";
+		if (type.contains("n3")) return "N3";
+		if (type.contains("n-triples")) return "N-TRIPLE";
+		return "RDF/XML";
+	}
+
+	public String toString() {
+		return "[" + uri + ": " + content.length + " bytes in " + latency + " ms]";
+	}
+
+}
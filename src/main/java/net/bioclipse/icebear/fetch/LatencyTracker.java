@@ -0,0 +1,47 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent response times of a single host.
+ */
+class LatencyTracker {
+
+	/** Below this number of samples no percentile is reported. */
+	static final int MIN_SAMPLES = 10;
+
+	private final long[] samples;
+	private int count = 0;
+	private int next = 0;
+
+	LatencyTracker(int size) {
+		this.samples = new long[size];
+	}
+
+	synchronized void record(long latency) {
+		samples[next] = latency;
+		next = (next + 1) % samples.length;
+		if (count < samples.length) count++;
+	}
+
+	/**
+	 * Returns the latency at the given percentile, or -1 when not enough is known yet.
+	 */
+	synchronized long percentile(double percentile) {
+		if (count < MIN_SAMPLES) return -1;
+		long[] sorted = Arrays.copyOf(samples, count);
+		Arrays.sort(sorted);
+		int index = (int)Math.ceil(percentile * count) - 1;
+		return sorted[Math.max(0, Math.min(count - 1, index))];
+	}
+
+}
@@ -0,0 +1,137 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Makes sure that concurrent requests for the same URI share a single download.
+ * Callers asking for a URI that is already being loaded wait for that load, and the
+ * result is kept for a short while for callers that arrive just after it finished.
+ * As all these callers get the same value, it must not hold anything specific to one
+ * of them, and must not be modified.
+ */
+public class SingleFlight<V> {
+
+	private ConcurrentMap<String,Flight> flights = new ConcurrentHashMap<String, Flight>();
+	private FetchPolicy policy;
+
+	/**
+	 * @param policy gives the time a loaded value stays available
+	 */
+	public SingleFlight(FetchPolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Returns the value for the URI, from a load that is running or just finished, or
+	 * else from the given loader. Failed loads are not kept: callers that joined a load
+	 * that failed try once more with their own loader.
+	 */
+	public V get(String uri, Callable<V> loader) throws Exception {
+		return get(uri, loader, 0);
+	}
+
+	/**
+	 * Like {@link #get(String, Callable)}, but a caller that joined the load of another
+	 * caller stops waiting at its own deadline, as the other caller may have a later one.
+	 *
+	 * @param deadline time in milliseconds since the epoch, or zero or less for no deadline
+	 * @throws SocketTimeoutException when the deadline passed while waiting for another load
+	 */
+	public V get(String uri, Callable<V> loader, long deadline) throws Exception {
+		String key = canonical(uri);
+		boolean retried = false;
+		while (true) {
+			evictExpired(System.currentTimeMillis());
+			Flight flight = new Flight(loader);
+			Flight existing = flights.putIfAbsent(key, flight);
+			boolean joined = existing != null;
+			if (joined) {
+				flight = existing;
+			} else {
+				flight.task.run();
+				flight.completedAt = System.currentTimeMillis();
+			}
+			try {
+				if (!joined || deadline <= 0) return flight.task.get();
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) throw new TimeoutException();
+				return flight.task.get(remaining, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException exception) {
+				throw new SocketTimeoutException("Deadline passed while waiting for the download of " + uri);
+			} catch (ExecutionException exception) {
+				flights.remove(key, flight);
+				if (joined && !retried) {
+					retried = true;
+					continue;
+				}
+				Throwable cause = exception.getCause();
+				if (cause instanceof Exception) throw (Exception)cause;
+				throw exception;
+			}
+		}
+	}
+
+	public int size() {
+		return flights.size();
+	}
+
+	private void evictExpired(long now) {
+		long retention = policy.getSharedRetention();
+		Iterator<Flight> iterator = flights.values().iterator();
+		while (iterator.hasNext()) {
+			long completedAt = iterator.next().completedAt;
+			if (completedAt > 0 && now - completedAt > retention) iterator.remove();
+		}
+	}
+
+	/**
+	 * Returns the URI with the scheme and host in lower case, and without default port and fragment.
+	 */
+	public static String canonical(String uri) {
+		try {
+			URI parsed = new URI(uri);
+			if (parsed.getScheme() == null || parsed.getHost() == null) return uri;
+			String scheme = parsed.getScheme().toLowerCase();
+			int port = parsed.getPort();
+			if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) port = -1;
+			StringBuilder canonical = new StringBuilder(scheme).append("://");
+			if (parsed.getRawUserInfo() != null) canonical.append(parsed.getRawUserInfo()).append('@');
+			canonical.append(parsed.getHost().toLowerCase());
+			if (port != -1) canonical.append(':').append(port);
+			if (parsed.getRawPath() != null) canonical.append(parsed.getRawPath());
+			if (parsed.getRawQuery() != null) canonical.append('?').append(parsed.getRawQuery());
+			return canonical.toString();
+		} catch (Exception exception) {
+			return uri;
+		}
+	}
+
+	private class Flight {
+
+		FutureTask<V> task;
+		volatile long completedAt = 0;
+
+		Flight(Callable<V> loader) {
+			this.task = new FutureTask<V>(loader);
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of SPARQL endpoints for resources that can be fetched in batches with a
+ * single CONSTRUCT query, instead of being dereferenced one by one. Endpoints are
+ * registered for a URI prefix, which is normally the host with the path under which
+ * the resources live. By default the query only returns the predicates the spiders and
+ * label lookup use; property extractors need all predicates, see
+ * {@link #setAllPredicates(boolean)}.
+ */
+public class SparqlEndpoints {
+
+	private Map<String,String> endpoints = new LinkedHashMap<String, String>() {
+		private static final long serialVersionUID = 3170487205283934316L;
+	{
+		put("http://www.wikidata.org/entity/", "https://query.wikidata.org/sparql");
+	}};
+
+	/** The predicates the spiders and label lookup use. */
+	private List<String> predicates = new ArrayList<String>() {
+		private static final long serialVersionUID = -3525734932286375140L;
+	{
+		add("http://www.w3.org/2002/07/owl#sameAs");
+		add("http://www.w3.org/2002/07/owl#equivalentClass");
+		add("http://www.w3.org/2004/02/skos/core#exactMatch");
+		add("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+		add("http://www.w3.org/2000/01/rdf-schema#label");
+		add("http://www.w3.org/2004/02/skos/core#prefLabel");
+		add("http://www.w3.org/2004/02/skos/core#altLabel");
+		add("http://purl.org/dc/elements/1.1/title");
+		add("http://purl.org/dc/terms/title");
+		add("http://schema.org/description");
+	}};
+
+	private volatile boolean allPredicates = false;
+
+	private int batchSize = 50;
+
+	/**
+	 * Registers an endpoint, e.g. a local Fuseki server for testing.
+	 *
+	 * @param uriPrefix prefix of the URIs of the resources served by the endpoint
+	 * @param endpoint  URL of the SPARQL endpoint
+	 */
+	public void register(String uriPrefix, String endpoint) {
+		endpoints.put(uriPrefix, endpoint);
+	}
+
+	public void unregister(String uriPrefix) {
+		endpoints.remove(uriPrefix);
+	}
+
+	public Map<String,String> getEndpoints() {
+		return endpoints;
+	}
+
+	public List<String> getPredicates() {
+		return predicates;
+	}
+
+	public boolean isAllPredicates() {
+		return allPredicates;
+	}
+
+	/**
+	 * Sets if the CONSTRUCT query returns all predicates of the resources, instead of
+	 * only those of {@link #getPredicates()}.
+	 */
+	public void setAllPredicates(boolean allPredicates) {
+		this.allPredicates = allPredicates;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns the CONSTRUCT query for the given resources, restricted to the registered predicates
+	 * unless all predicates are asked for.
+	 */
+	public String getConstructQuery(List<String> resources) {
+		StringBuilder query = new StringBuilder("CONSTRUCT { ?s ?p ?o } WHERE {\n  VALUES ?s {");
+		for (String resource : resources) query.append(" <").append(resource).append('>');
+		query.append(" }\n");
+		if (!allPredicates) {
+			query.append("  VALUES ?p {");
+			for (String predicate : predicates) query.append(" <").append(predicate).append('>');
+			query.append(" }\n");
+		}
+		query.append("  ?s ?p ?o .\n}");
+		return query.toString();
+	}
+
+	/**
+	 * Returns the URL with which the CONSTRUCT query is run with an HTTP GET.
+	 */
+	public String getQueryURL(String endpoint, List<String> resources) {
+		try {
+			return endpoint + (endpoint.contains("?") ? "&" : "?") + "query=" +
+				URLEncoder.encode(getConstructQuery(resources), "UTF-8");
+		} catch (UnsupportedEncodingException exception) {
+			throw new IllegalStateException(exception); // UTF-8 is always supported
+		}
+	}
+
+}
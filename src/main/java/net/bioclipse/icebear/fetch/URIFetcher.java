@@ -0,0 +1,213 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads the content of URIs with connect, read and total timeouts. When
+ * a host answers slower than it normally does, a second, hedged request is
+ * sent (to a mirror when one is known) and the first answer is used.
+ */
+public class URIFetcher {
+
+	private static final int MAX_REDIRECTS = 5;
+
+	private FetchPolicy policy;
+	private Map<String,String> headers;
+	private Map<String,LatencyTracker> latencies = new ConcurrentHashMap<String, LatencyTracker>();
+
+	private ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "icebear-fetch");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	public URIFetcher(FetchPolicy policy, Map<String,String> headers) {
+		this.policy = policy;
+		this.headers = headers;
+	}
+
+	public FetchResult fetch(String uri) throws IOException {
+		return fetch(uri, 0);
+	}
+
+	/**
+	 * Downloads the URI, giving up at the given deadline, or when the total timeout
+	 * of the policy has passed.
+	 *
+	 * @param uri      the URI to dereference
+	 * @param deadline time in milliseconds since the epoch, or 0 for no deadline
+	 */
+	public FetchResult fetch(String uri, long deadline) throws IOException {
+		long start = System.currentTimeMillis();
+		if (policy.getTotalTimeout() > 0) {
+			long totalDeadline = start + policy.getTotalTimeout();
+			deadline = (deadline <= 0) ? totalDeadline : Math.min(deadline, totalDeadline);
+		}
+		String host = hostOf(uri);
+		long hedgeDelay = getHedgeDelay(host);
+
+		CompletionService<FetchResult> completion = new ExecutorCompletionService<FetchResult>(executor);
+		List<Attempt> attempts = new ArrayList<Attempt>();
+		List<Future<FetchResult>> futures = new ArrayList<Future<FetchResult>>();
+		Attempt first = new Attempt(uri);
+		attempts.add(first);
+		futures.add(completion.submit(first));
+		int pending = 1;
+		boolean hedged = hedgeDelay < 0;
+		IOException lastError = null;
+		Future<FetchResult> winner = null;
+		try {
+			while (pending > 0) {
+				long now = System.currentTimeMillis();
+				long wait = (deadline > 0) ? deadline - now : Long.MAX_VALUE;
+				if (wait <= 0)
+					throw new SocketTimeoutException("No answer within the deadline for " + uri);
+				if (!hedged) wait = Math.min(wait, Math.max(0, start + hedgeDelay - now));
+				Future<FetchResult> done = completion.poll(wait, TimeUnit.MILLISECONDS);
+				if (done == null) {
+					if (!hedged && System.currentTimeMillis() - start >= hedgeDelay) {
+						hedged = true;
+						Attempt hedge = new Attempt(policy.getAlternative(uri));
+						System.out.println("Hedging slow request for " + uri + " with " + hedge.uri);
+						attempts.add(hedge);
+						futures.add(completion.submit(hedge));
+						pending++;
+					}
+					continue;
+				}
+				pending--;
+				try {
+					FetchResult result = done.get();
+					winner = done;
+					// the time the caller waited, so that hedged answers do not lower the percentile
+					trackerFor(host).record(System.currentTimeMillis() - start);
+					return result;
+				} catch (ExecutionException exception) {
+					Throwable cause = exception.getCause();
+					lastError = (cause instanceof IOException)
+						? (IOException)cause : new IOException(cause.getMessage(), cause);
+				}
+			}
+			throw lastError;
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while downloading " + uri, exception);
+		} finally {
+			for (int i = 0; i < futures.size(); i++) {
+				if (futures.get(i) == winner) continue; // keep its connection alive for reuse
+				futures.get(i).cancel(true);
+				attempts.get(i).abort();
+			}
+		}
+	}
+
+	private long getHedgeDelay(String host) {
+		if (policy.getHedgePercentile() >= 1.0) return -1;
+		long delay = trackerFor(host).percentile(policy.getHedgePercentile());
+		if (delay < 0) return -1;
+		return Math.max(delay, policy.getMinimalHedgeDelay());
+	}
+
+	private LatencyTracker trackerFor(String host) {
+		LatencyTracker tracker = latencies.get(host);
+		if (tracker == null) {
+			latencies.putIfAbsent(host, new LatencyTracker(128));
+			tracker = latencies.get(host);
+		}
+		return tracker;
+	}
+
+	private static String hostOf(String uri) {
+		try {
+			String host = new URI(uri).getHost();
+			return host == null ? "" : host.toLowerCase();
+		} catch (Exception exception) {
+			return "";
+		}
+	}
+
+	private class Attempt implements Callable<FetchResult> {
+
+		String uri;
+		volatile HttpURLConnection connection;
+		volatile boolean aborted = false;
+
+		Attempt(String uri) {
+			this.uri = uri;
+		}
+
+		public FetchResult call() throws IOException {
+			long start = System.currentTimeMillis();
+			URL url = new URL(uri);
+			for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+				HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+				this.connection = conn;
+				if (aborted) throw new IOException("Aborted download of " + uri);
+				conn.setConnectTimeout(Math.max(0, policy.getConnectTimeout()));
+				conn.setReadTimeout(Math.max(0, policy.getReadTimeout()));
+				conn.setInstanceFollowRedirects(false);
+				for (Map.Entry<String,String> header : headers.entrySet()) {
+					conn.setRequestProperty(header.getKey(), header.getValue());
+				}
+				int status = conn.getResponseCode();
+				if (status >= 300 && status < 400 && conn.getHeaderField("Location") != null) {
+					// also follow http -> https redirects, which HttpURLConnection does not do
+					url = new URL(url, conn.getHeaderField("Location"));
+					conn.disconnect();
+					continue;
+				}
+				if (status >= 400)
+					throw new IOException("HTTP " + status + " for " + url);
+				InputStream stream = conn.getInputStream();
+				try {
+					ByteArrayOutputStream content = new ByteArrayOutputStream();
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = stream.read(buffer)) != -1) content.write(buffer, 0, read);
+					long now = System.currentTimeMillis();
+					return new FetchResult(this.uri, conn.getContentType(), content.toByteArray(), now, now - start);
+				} finally {
+					stream.close();
+				}
+			}
+			throw new IOException("Too many redirects for " + uri);
+		}
+
+		void abort() {
+			aborted = true;
+			HttpURLConnection conn = this.connection;
+			if (conn != null) conn.disconnect();
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+
+import net.bioclipse.icebear.business.Entry;
+
+/**
+ * Writes {@link Entry} rows as CSV while they come in, as fallback for {@link EntryTable}.
+ * The fetched_at column has ISO-8601 times in UTC, e.g. <code>2021-07-01T00:00:00Z</code>.
+ */
+public class EntryCSVWriter implements Closeable {
+
+	private Writer writer;
+
+	public EntryCSVWriter(Writer writer) throws IOException {
+		this.writer = writer;
+		for (int i = 0; i < EntryRows.COLUMNS.length; i++) {
+			if (i > 0) writer.write(',');
+			writer.write(EntryRows.COLUMNS[i]);
+		}
+		writer.write("\r\n");
+	}
+
+	/**
+	 * @param fetchedAt time the resource was downloaded, in milliseconds since the epoch,
+	 *                  or null when not known, which gives an empty field
+	 */
+	public void write(Entry entry, Long fetchedAt) throws IOException {
+		writer.write(quote(entry.resource));
+		writer.write(',');
+		writer.write(quote(entry.predicate));
+		writer.write(',');
+		writer.write(quote(entry.predicateLabel));
+		writer.write(',');
+		writer.write(quote(Entry.stripDataType(entry.object)));
+		writer.write(',');
+		writer.write(quote(Entry.getDataType(entry.object)));
+		writer.write(',');
+		writer.write(quote(EntryRows.getHost(entry.resource)));
+		writer.write(',');
+		if (fetchedAt != null) writer.write(Instant.ofEpochMilli(fetchedAt).toString());
+		writer.write("\r\n");
+	}
+
+	private static String quote(String value) {
+		if (value == null) return "";
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+			return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+}
@@ -0,0 +1,34 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.io;
+
+import java.net.URI;
+
+import net.bioclipse.icebear.business.Entry;
+
+/**
+ * Splits an {@link Entry} into the columns used by the exporters.
+ */
+class EntryRows {
+
+	static final String[] COLUMNS = {
+		"resource", "predicate", "label", "object", "datatype", "source_host", "fetched_at"
+	};
+
+	static String getHost(String resource) {
+		if (resource == null) return null;
+		try {
+			return new URI(resource).getHost();
+		} catch (Exception exception) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,191 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+
+import net.bioclipse.icebear.business.Entry;
+
+/**
+ * Collects {@link Entry} rows in columns and writes them as an Arrow IPC file. All string
+ * columns except the object are dictionary-encoded, both in memory and in the file, as
+ * they repeat a lot: the same resources, predicates, labels, datatypes and hosts.
+ */
+public class EntryTable {
+
+	private static final int BATCH_SIZE = 65536;
+	private static final ArrowType.Int INDEX_TYPE = new ArrowType.Int(32, true);
+	/** Marks rows without a fetch time, which are written as null. */
+	private static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+	// dictionary-encoded columns, in the order of EntryRows.COLUMNS
+	private static final int RESOURCE = 0;
+	private static final int PREDICATE = 1;
+	private static final int LABEL = 2;
+	private static final int DATATYPE = 3;
+	private static final int HOST = 4;
+	private static final String[] ENCODED_COLUMNS = {
+		"resource", "predicate", "label", "datatype", "source_host"
+	};
+
+	private StringDictionary[] dictionaries = new StringDictionary[ENCODED_COLUMNS.length];
+	private int[][] indices = new int[ENCODED_COLUMNS.length][];
+	private List<String> objects = new ArrayList<String>();
+	private long[] fetchedAt = new long[1024];
+	private int rowCount = 0;
+
+	public EntryTable() {
+		for (int i = 0; i < ENCODED_COLUMNS.length; i++) {
+			dictionaries[i] = new StringDictionary();
+			indices[i] = new int[1024];
+		}
+	}
+
+	/**
+	 * @param fetchedAt time the resource was downloaded, in milliseconds since the epoch,
+	 *                  or null when not known
+	 */
+	public void add(Entry entry, Long fetchedAt) {
+		if (rowCount == this.fetchedAt.length) {
+			int capacity = rowCount * 2;
+			this.fetchedAt = Arrays.copyOf(this.fetchedAt, capacity);
+			for (int i = 0; i < indices.length; i++) indices[i] = Arrays.copyOf(indices[i], capacity);
+		}
+		indices[RESOURCE][rowCount] = dictionaries[RESOURCE].indexOf(entry.resource);
+		indices[PREDICATE][rowCount] = dictionaries[PREDICATE].indexOf(entry.predicate);
+		indices[LABEL][rowCount] = dictionaries[LABEL].indexOf(entry.predicateLabel);
+		indices[DATATYPE][rowCount] = dictionaries[DATATYPE].indexOf(Entry.getDataType(entry.object));
+		indices[HOST][rowCount] = dictionaries[HOST].indexOf(EntryRows.getHost(entry.resource));
+		objects.add(Entry.stripDataType(entry.object));
+		this.fetchedAt[rowCount] = fetchedAt == null ? UNKNOWN_TIME : fetchedAt;
+		rowCount++;
+	}
+
+	public int size() {
+		return rowCount;
+	}
+
+	/**
+	 * Writes the rows as an Arrow IPC file, in record batches of at most 65536 rows.
+	 */
+	public void writeArrow(File file) throws IOException {
+		try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE)) {
+			DictionaryProvider.MapDictionaryProvider provider = new DictionaryProvider.MapDictionaryProvider();
+			List<FieldVector> dictionaryVectors = new ArrayList<FieldVector>();
+			List<FieldVector> vectors = new ArrayList<FieldVector>();
+			try {
+				IntVector[] encoded = new IntVector[ENCODED_COLUMNS.length];
+				for (int i = 0; i < ENCODED_COLUMNS.length; i++) {
+					VarCharVector values = dictionaries[i].asVector(ENCODED_COLUMNS[i] + "_values", allocator);
+					dictionaryVectors.add(values);
+					DictionaryEncoding encoding = new DictionaryEncoding(i, false, INDEX_TYPE);
+					provider.put(new Dictionary(values, encoding));
+					encoded[i] = new IntVector(
+						new Field(ENCODED_COLUMNS[i], new FieldType(true, INDEX_TYPE, encoding), null), allocator
+					);
+				}
+				VarCharVector object = new VarCharVector("object", FieldType.nullable(new ArrowType.Utf8()), allocator);
+				TimeStampMilliTZVector time = new TimeStampMilliTZVector(
+					"fetched_at", FieldType.nullable(new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC")), allocator
+				);
+				vectors.add(encoded[RESOURCE]);
+				vectors.add(encoded[PREDICATE]);
+				vectors.add(encoded[LABEL]);
+				vectors.add(object);
+				vectors.add(encoded[DATATYPE]);
+				vectors.add(encoded[HOST]);
+				vectors.add(time);
+
+				VectorSchemaRoot root = new VectorSchemaRoot(vectors);
+				try (FileOutputStream output = new FileOutputStream(file);
+					 ArrowFileWriter writer = new ArrowFileWriter(root, provider, output.getChannel())) {
+					writer.start();
+					for (int start = 0; start < rowCount; start += BATCH_SIZE) {
+						int end = Math.min(rowCount, start + BATCH_SIZE);
+						root.allocateNew();
+						for (int row = start; row < end; row++) {
+							for (int i = 0; i < ENCODED_COLUMNS.length; i++) {
+								int index = indices[i][row];
+								if (index < 0) encoded[i].setNull(row - start);
+								else encoded[i].setSafe(row - start, index);
+							}
+							String value = objects.get(row);
+							if (value == null) object.setNull(row - start);
+							else object.setSafe(row - start, value.getBytes(StandardCharsets.UTF_8));
+							if (fetchedAt[row] == UNKNOWN_TIME) time.setNull(row - start);
+							else time.setSafe(row - start, fetchedAt[row]);
+						}
+						root.setRowCount(end - start);
+						writer.writeBatch();
+					}
+					writer.end();
+				}
+			} finally {
+				for (FieldVector vector : vectors) vector.close();
+				for (FieldVector vector : dictionaryVectors) vector.close();
+			}
+		}
+	}
+
+	private static class StringDictionary {
+
+		Map<String,Integer> index = new HashMap<String, Integer>();
+		List<String> values = new ArrayList<String>();
+
+		/**
+		 * Returns the index of the value, adding it when new, or -1 for null.
+		 */
+		int indexOf(String value) {
+			if (value == null) return -1;
+			Integer position = index.get(value);
+			if (position == null) {
+				position = values.size();
+				index.put(value, position);
+				values.add(value);
+			}
+			return position;
+		}
+
+		VarCharVector asVector(String name, BufferAllocator allocator) {
+			VarCharVector vector = new VarCharVector(name, allocator);
+			vector.allocateNew();
+			for (int i = 0; i < values.size(); i++) {
+				vector.setSafe(i, values.get(i).getBytes(StandardCharsets.UTF_8));
+			}
+			vector.setValueCount(values.size());
+			return vector;
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.io;
+
+import java.util.List;
+
+import net.bioclipse.icebear.business.Entry;
+
+/**
+ * Minimal JSON serialization of {@link Entry} lists.
+ */
+public class JSON {
+
+	public static String quote(String value) {
+		if (value == null) return "null";
+		StringBuilder buffer = new StringBuilder(value.length() + 2);
+		buffer.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': buffer.append("\\\""); break;
+			case '\\': buffer.append("\\\\"); break;
+			case '\n': buffer.append("\\n"); break;
+			case '\r': buffer.append("\\r"); break;
+			case '\t': buffer.append("\\t"); break;
+			default:
+				if (c < 0x20) buffer.append(String.format("\\u%04x", (int)c));
+				else buffer.append(c);
+			}
+		}
+		return buffer.append('"').toString();
+	}
+
+	public static String asJSON(Entry entry) {
+		return "{\"resource\":" + quote(entry.resource) +
+			",\"predicate\":" + quote(entry.predicate) +
+			",\"predicateLabel\":" + quote(entry.predicateLabel) +
+			",\"object\":" + quote(entry.object) + "}";
+	}
+
+	public static String asJSON(List<Entry> entries) {
+		StringBuilder buffer = new StringBuilder("[");
+		for (int i = 0; i < entries.size(); i++) {
+			if (i > 0) buffer.append(',');
+			buffer.append(asJSON(entries.get(i)));
+		}
+		return buffer.append(']').toString();
+	}
+
+}
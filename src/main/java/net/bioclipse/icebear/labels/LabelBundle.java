@@ -0,0 +1,199 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.labels;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only lookup of resource labels in the binary bundle written by {@link LabelBundleBuilder}.
+ * The bundle is memory-mapped when it is a plain file, and otherwise copied into an off-heap
+ * buffer, so that it does not take up heap space.
+ *
+ * <p>The layout is: the magic number, the version, the number of entries, then per entry the
+ * 64-bit hash of the URI, the offset of the URI and the offset of the label (-1 for ignored
+ * resources), sorted by hash, followed by the length-prefixed UTF-8 strings.
+ */
+public class LabelBundle {
+
+	static final int MAGIC = 0x4943424c; // "ICBL"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 12;
+	static final int ENTRY_SIZE = 16;
+
+	private static final String RESOURCE = "/net/bioclipse/icebear/labels.bin";
+	private static final String CURATED = "/net/bioclipse/icebear/labels.tsv";
+
+	private ByteBuffer buffer;
+	private int count;
+
+	private static class DefaultHolder {
+		static final LabelBundle INSTANCE = loadDefault();
+	}
+
+	/**
+	 * Returns the bundle shipped with Isbjørn, which is loaded on first use.
+	 */
+	public static LabelBundle getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	public LabelBundle(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a label bundle");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("Unsupported label bundle version: " + buffer.getInt(4));
+		this.count = buffer.getInt(8);
+	}
+
+	public static LabelBundle open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// the mapping stays valid after the channel is closed
+			return new LabelBundle(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static LabelBundle loadDefault() {
+		try {
+			URL url = LabelBundle.class.getResource(RESOURCE);
+			if (url == null) return loadCurated();
+			if ("file".equals(url.getProtocol())) return open(new File(url.toURI()));
+			InputStream stream = url.openStream();
+			try {
+				byte[] chunk = new byte[65536];
+				ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(HEADER_SIZE, stream.available()));
+				int read;
+				while ((read = stream.read(chunk)) != -1) {
+					if (buffer.remaining() < read) {
+						ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + read));
+						buffer.flip();
+						larger.put(buffer);
+						buffer = larger;
+					}
+					buffer.put(chunk, 0, read);
+				}
+				buffer.flip();
+				return new LabelBundle(buffer.slice());
+			} finally {
+				stream.close();
+			}
+		} catch (Exception exception) {
+			System.out.println("Could not load the label bundle: " + exception.getMessage());
+			return empty();
+		}
+	}
+
+	/**
+	 * Builds the bundle from the curated labels, for builds that did not compile it,
+	 * like those in Eclipse.
+	 */
+	static LabelBundle loadCurated() throws IOException {
+		InputStream stream = LabelBundle.class.getResourceAsStream(CURATED);
+		if (stream == null) {
+			System.out.println("No label bundle found, labels will be looked up online");
+			return empty();
+		}
+		LabelBundleBuilder builder = new LabelBundleBuilder();
+		builder.addTSV(stream);
+		return builder.build();
+	}
+
+	private static LabelBundle empty() {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(0);
+		try {
+			return new LabelBundle(buffer);
+		} catch (IOException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns true when the bundle has a label for the resource, or marks it as ignored.
+	 */
+	public boolean contains(String resource) {
+		return find(resource) >= 0;
+	}
+
+	/**
+	 * Returns the label of the resource, or null when it is ignored or unknown.
+	 */
+	public String getLabel(String resource) {
+		int entry = find(resource);
+		if (entry < 0) return null;
+		int labelOffset = buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE + 12);
+		if (labelOffset < 0) return null;
+		return readString(labelOffset);
+	}
+
+	private int find(String resource) {
+		byte[] uri = resource.getBytes(StandardCharsets.UTF_8);
+		long hash = hash(uri);
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long middleHash = buffer.getLong(HEADER_SIZE + middle * ENTRY_SIZE);
+			if (middleHash < hash) low = middle + 1;
+			else if (middleHash > hash) high = middle - 1;
+			else {
+				// check all entries with this hash for the URI itself
+				int first = middle;
+				while (first > 0 && buffer.getLong(HEADER_SIZE + (first - 1) * ENTRY_SIZE) == hash) first--;
+				for (int entry = first; entry < count && buffer.getLong(HEADER_SIZE + entry * ENTRY_SIZE) == hash; entry++) {
+					if (stringEquals(buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE + 8), uri)) return entry;
+				}
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	private boolean stringEquals(int offset, byte[] value) {
+		if (buffer.getInt(offset) != value.length) return false;
+		for (int i = 0; i < value.length; i++) {
+			if (buffer.get(offset + 4 + i) != value[i]) return false;
+		}
+		return true;
+	}
+
+	private String readString(int offset) {
+		byte[] bytes = new byte[buffer.getInt(offset)];
+		for (int i = 0; i < bytes.length; i++) bytes[i] = buffer.get(offset + 4 + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 64-bit FNV-1a hash.
+	 */
+	static long hash(byte[] bytes) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : bytes) {
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+}
@@ -0,0 +1,192 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.labels;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.RDFS;
+
+/**
+ * Compiles labels into the binary format read by {@link LabelBundle}. Run as:
+ *
+ * <pre>
+ * LabelBundleBuilder output.bin tsv:labels.tsv rdf:http://purl.obolibrary.org/obo/cheminf.owl ...
+ * </pre>
+ *
+ * Sources starting with <code>tsv:</code> are tab-separated URI and label pairs, where an
+ * empty label marks an ignored resource; this also reads SPARQL results in the TSV format.
+ * Sources starting with <code>rdf:</code> are RDF documents from which the English
+ * <code>rdfs:label</code>s are taken. When a URI is found more than once, the first source wins.
+ */
+public class LabelBundleBuilder {
+
+	private Map<String,String> labels = new LinkedHashMap<String, String>();
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: LabelBundleBuilder output.bin [tsv:|rdf:]source ...");
+			System.exit(1);
+		}
+		LabelBundleBuilder builder = new LabelBundleBuilder();
+		for (int i = 1; i < args.length; i++) {
+			// a single argument may hold more sources, to allow passing them as one Maven property
+			for (String source : args[i].trim().split("\\s+")) {
+				if (source.length() == 0) continue;
+				if (source.startsWith("tsv:")) builder.addTSV(open(source.substring(4)));
+				else if (source.startsWith("rdf:")) builder.addRDF(source.substring(4));
+				else throw new IllegalArgumentException("Unknown source type: " + source);
+			}
+		}
+		builder.write(new File(args[0]));
+		System.out.println("Wrote " + builder.labels.size() + " labels to " + args[0]);
+	}
+
+	public void add(String uri, String label) {
+		if (!labels.containsKey(uri)) labels.put(uri, label);
+	}
+
+	public void addTSV(InputStream stream) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().length() == 0 || line.startsWith("#") || line.startsWith("?")) continue;
+				String[] fields = line.split("\t", -1);
+				String label = fields.length > 1 ? unquote(fields[1]) : "";
+				add(unquote(fields[0]), label.length() == 0 ? null : label);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	public void addRDF(String location) {
+		Model model = ModelFactory.createDefaultModel();
+		model.read(location);
+		StmtIterator statements = model.listStatements(null, RDFS.label, (RDFNode)null);
+		Map<String,String> found = new LinkedHashMap<String, String>();
+		while (statements.hasNext()) {
+			Statement statement = statements.next();
+			if (!statement.getSubject().isURIResource() || !statement.getObject().isLiteral()) continue;
+			String uri = statement.getSubject().getURI();
+			Literal label = statement.getObject().asLiteral();
+			String language = label.getLanguage();
+			if ("en".equals(language) || (language.length() == 0 && !found.containsKey(uri)))
+				found.put(uri, label.getLexicalForm());
+		}
+		for (Map.Entry<String,String> entry : found.entrySet()) add(entry.getKey(), entry.getValue());
+		model.close();
+	}
+
+	public void write(File file) throws IOException {
+		write(new FileOutputStream(file));
+	}
+
+	/**
+	 * Returns the bundle in memory, without writing it to a file first.
+	 */
+	public LabelBundle build() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		write(bytes);
+		return new LabelBundle(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	/**
+	 * Writes the bundle to the stream and closes it.
+	 */
+	public void write(OutputStream output) throws IOException {
+		List<Map.Entry<String,String>> entries = new ArrayList<Map.Entry<String,String>>(labels.entrySet());
+		final Map<String,Long> hashes = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String,String> entry : entries)
+			hashes.put(entry.getKey(), LabelBundle.hash(entry.getKey().getBytes(StandardCharsets.UTF_8)));
+		Collections.sort(entries, new Comparator<Map.Entry<String,String>>() {
+			public int compare(Map.Entry<String,String> one, Map.Entry<String,String> other) {
+				return Long.compare(hashes.get(one.getKey()), hashes.get(other.getKey()));
+			}
+		});
+
+		int stringsStart = LabelBundle.HEADER_SIZE + entries.size() * LabelBundle.ENTRY_SIZE;
+		ByteArrayOutputStream strings = new ByteArrayOutputStream();
+		DataOutputStream stringData = new DataOutputStream(strings);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+		try {
+			out.writeInt(LabelBundle.MAGIC);
+			out.writeInt(LabelBundle.VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String,String> entry : entries) {
+				out.writeLong(hashes.get(entry.getKey()));
+				out.writeInt(stringsStart + stringData.size());
+				writeString(stringData, entry.getKey());
+				if (entry.getValue() == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(stringsStart + stringData.size());
+					writeString(stringData, entry.getValue());
+				}
+			}
+			stringData.flush();
+			strings.writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Removes the angle brackets of URIs and the quotes and language tag of
+	 * literals, as used in SPARQL TSV results.
+	 */
+	private static String unquote(String value) {
+		value = value.trim();
+		if (value.startsWith("<") && value.endsWith(">")) return value.substring(1, value.length() - 1);
+		if (value.startsWith("\"") && value.lastIndexOf('"') > 0)
+			return value.substring(1, value.lastIndexOf('"'));
+		return value;
+	}
+
+	private static InputStream open(String location) throws IOException {
+		if (!location.contains("://")) return new FileInputStream(location);
+		URLConnection connection = new URL(location).openConnection();
+		connection.setRequestProperty("Accept", "text/tab-separated-values");
+		return connection.getInputStream();
+	}
+
+}
@@ -0,0 +1,260 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.bioclipse.cdk.domain.ICDKMolecule;
+import net.bioclipse.core.domain.IMolecule.Property;
+import net.bioclipse.icebear.business.Entry;
+import net.bioclipse.icebear.business.MoleculeNotFoundException;
+import net.bioclipse.icebear.io.JSON;
+import net.bioclipse.managers.IcebearManager;
+import net.bioclipse.rdf.business.IRDFStore;
+
+/**
+ * Long-running HTTP service around a single {@link IcebearManager}, so that its caches
+ * are shared between all requests. Endpoints:
+ *
+ * <ul>
+ *   <li><code>GET /findInfo?inchikey=...</code> or <code>?smiles=...</code>, or
+ *       <code>POST /findInfo</code> with a molfile as body; add <code>format=html</code>
+ *       for the HTML report instead of JSON</li>
+ *   <li><code>GET /metrics</code>: running and queued requests, as plain text</li>
+ * </ul>
+ *
+ * At most <code>maxConcurrent</code> crawls run at the same time and at most
+ * <code>maxQueued</code> more wait for their turn; requests beyond that get a 503.
+ * InChIKeys that are not standard get a 400, unknown molecules a 404, and errors
+ * while asking Wikidata a 502.
+ */
+public class IcebearServer {
+
+	private IcebearManager icebear;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	private int maxConcurrent;
+	private int maxQueued;
+	private Semaphore running;
+	private AtomicInteger admitted = new AtomicInteger();
+	private AtomicLong completed = new AtomicLong();
+	private AtomicLong rejected = new AtomicLong();
+
+	public IcebearServer(String workspaceRoot, int maxConcurrent, int maxQueued) {
+		this(new IcebearManager(workspaceRoot), maxConcurrent, maxQueued);
+	}
+
+	/**
+	 * Creates a server around the given manager, e.g. one already configured by a script.
+	 */
+	public IcebearServer(IcebearManager icebear, int maxConcurrent, int maxQueued) {
+		this.icebear = icebear;
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+		this.maxQueued = Math.max(0, maxQueued);
+		this.running = new Semaphore(this.maxConcurrent, true);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		String workspaceRoot = args.length > 1 ? args[1] : ".";
+		int maxConcurrent = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		int maxQueued = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+		new IcebearServer(workspaceRoot, maxConcurrent, maxQueued).start(port);
+		System.out.println("Isbjørn listening on port " + port);
+	}
+
+	/**
+	 * Starts the server, where a port of 0 picks a free port.
+	 */
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/findInfo", new FindInfoHandler());
+		server.createContext("/metrics", new MetricsHandler());
+		// one thread per admitted request, so that queued requests do not block the metrics
+		executor = Executors.newFixedThreadPool(maxConcurrent + maxQueued + 1);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public void stop() {
+		if (server != null) server.stop(0);
+		if (executor != null) executor.shutdownNow();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public IcebearManager getManager() {
+		return icebear;
+	}
+
+	/**
+	 * Returns the number of admitted requests that wait for a crawl slot.
+	 */
+	public int getQueueDepth() {
+		return Math.max(0, admitted.get() - getRunning());
+	}
+
+	public int getRunning() {
+		return maxConcurrent - running.availablePermits();
+	}
+
+	class FindInfoHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (admitted.incrementAndGet() > maxConcurrent + maxQueued) {
+					admitted.decrementAndGet();
+					rejected.incrementAndGet();
+					exchange.getResponseHeaders().set("Retry-After", "10");
+					send(exchange, 503, "text/plain", "Too many requests, try again later\n");
+					return;
+				}
+				try {
+					running.acquire();
+					try {
+						findInfo(exchange);
+					} finally {
+						running.release();
+					}
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+					send(exchange, 503, "text/plain", "Server is stopping\n");
+				} finally {
+					admitted.decrementAndGet();
+					completed.incrementAndGet();
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private void findInfo(HttpExchange exchange) throws IOException {
+			Map<String,String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+			String inchikey;
+			try {
+				if (params.containsKey("inchikey")) {
+					inchikey = params.get("inchikey");
+				} else if (params.containsKey("smiles")) {
+					inchikey = icebear.getCDKManager().fromSMILES(params.get("smiles")).getInChIKey(Property.USE_CACHED_OR_CALCULATED);
+				} else if ("POST".equals(exchange.getRequestMethod())) {
+					ICDKMolecule mol = icebear.getCDKManager().fromString(readBody(exchange.getRequestBody()));
+					inchikey = mol.getInChIKey(Property.USE_CACHED_OR_CALCULATED);
+				} else {
+					send(exchange, 400, "text/plain", "Give an inchikey or smiles parameter, or POST a molfile\n");
+					return;
+				}
+			} catch (Exception exception) {
+				send(exchange, 400, "text/plain", "Could not read the molecule: " + exception.getMessage() + "\n");
+				return;
+			}
+
+			if (!IcebearManager.isInChIKey(inchikey)) {
+				send(exchange, 400, "text/plain", "Not a standard InChIKey\n");
+				return;
+			}
+
+			List<IRDFStore> stores;
+			try {
+				stores = icebear.findInfo(inchikey);
+			} catch (MoleculeNotFoundException exception) {
+				send(exchange, 404, "text/plain", exception.getMessage() + "\n");
+				return;
+			} catch (Exception exception) {
+				send(exchange, 502, "text/plain", "Could not look up the molecule in Wikidata: " + exception.getMessage() + "\n");
+				return;
+			}
+			try {
+				if ("html".equals(params.get("format"))) {
+					send(exchange, 200, "text/html; charset=utf-8", icebear.asHTML(stores));
+				} else {
+					List<Entry> entries = new ArrayList<Entry>();
+					for (IRDFStore store : stores) entries.addAll(icebear.getProperties(store));
+					send(exchange, 200, "application/json",
+						"{\"inchikey\":" + JSON.quote(inchikey) + ",\"entries\":" + JSON.asJSON(entries) + "}\n");
+				}
+			} catch (Exception exception) {
+				send(exchange, 500, "text/plain", "Could not report the results: " + exception.getMessage() + "\n");
+			}
+		}
+	}
+
+	class MetricsHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				send(exchange, 200, "text/plain",
+					"icebear_requests_running " + getRunning() + "\n" +
+					"icebear_requests_queued " + getQueueDepth() + "\n" +
+					"icebear_requests_completed_total " + completed.get() + "\n" +
+					"icebear_requests_rejected_total " + rejected.get() + "\n"
+				);
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(bytes);
+		output.close();
+	}
+
+	private static String readBody(InputStream input) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) != -1) body.write(buffer, 0, read);
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static Map<String,String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String,String> params = new HashMap<String, String>();
+		if (query == null) return params;
+		for (String param : query.split("&")) {
+			int equals = param.indexOf('=');
+			if (equals < 0) continue;
+			params.put(
+				URLDecoder.decode(param.substring(0, equals), "UTF-8"),
+				URLDecoder.decode(param.substring(equals + 1), "UTF-8")
+			);
+		}
+		return params;
+	}
+
+}
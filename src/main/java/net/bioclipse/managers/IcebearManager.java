@@ -9,17 +9,37 @@
  */
 package net.bioclipse.managers;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 import org.apache.jena.vocabulary.DC;
 import org.apache.jena.vocabulary.DC_10;
@@ -33,13 +53,27 @@ import net.bioclipse.core.business.BioclipseException;
 import net.bioclipse.core.domain.IMolecule;
 import net.bioclipse.core.domain.IMolecule.Property;
 import net.bioclipse.core.domain.IStringMatrix;
+import net.bioclipse.icebear.batch.BatchRunner;
 import net.bioclipse.icebear.business.Entry;
 import net.bioclipse.icebear.business.Fields;
+import net.bioclipse.icebear.business.IdentityIndex;
+import net.bioclipse.icebear.business.MoleculeNotFoundException;
+import net.bioclipse.icebear.extractors.AbstractExtractor;
+import net.bioclipse.icebear.extractors.HostRules;
 import net.bioclipse.icebear.extractors.INextURIExtractor;
 import net.bioclipse.icebear.extractors.IPropertyExtractor;
 import net.bioclipse.icebear.extractors.links.OwlEquivalentClassExtractor;
 import net.bioclipse.icebear.extractors.links.OwlSameAsExtractor;
 import net.bioclipse.icebear.extractors.links.SkosExactMatchExtractor;
+import net.bioclipse.icebear.fetch.FetchPolicy;
+import net.bioclipse.icebear.fetch.FetchResult;
+import net.bioclipse.icebear.fetch.SingleFlight;
+import net.bioclipse.icebear.fetch.SparqlEndpoints;
+import net.bioclipse.icebear.fetch.URIFetcher;
+import net.bioclipse.icebear.io.EntryCSVWriter;
+import net.bioclipse.icebear.io.EntryTable;
+import net.bioclipse.icebear.labels.LabelBundle;
+import net.bioclipse.rdf.business.IJenaStore;
 import net.bioclipse.rdf.business.IRDFStore;
 
 /**
@@ -47,12 +81,23 @@ import net.bioclipse.rdf.business.IRDFStore;
  */
 public class IcebearManager implements IBactingManager {
 
+	private static final Pattern INCHIKEY = Pattern.compile("[A-Z]{14}-[A-Z]{10}-[A-Z]");
+
 	private static final String ICON = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAAoAAAAKCAYAAACNMs+9AAAAGXRFWHRTb2Z0d2FyZQBBZG9iZSBJbWFnZVJlYWR5ccllPAAAAFZJREFUeF59z4EJADEIQ1F36k7u5E7ZKXeUQPACJ3wK7UNokVxVk9kHnQH7bY9hbDyDhNXgjpRLqFlo4M2GgfyJHhjq8V4agfrgPQX3JtJQGbofmCHgA/nAKks+JAjFAAAAAElFTkSuQmCC";
 
 	private String workspaceRoot;
-	private CDKManager cdk;
-	private RDFManager rdf;
-	private UIManager ui;
+	// the other managers are only created when first needed, see cdk(), rdf() and ui()
+	private volatile CDKManager cdk;
+	private volatile RDFManager rdf;
+	private volatile UIManager ui;
+	private FetchPolicy policy = new FetchPolicy();
+	// and so is what is only used while crawling, see fetcher(), loadedStores(), identities() and crawlers()
+	private volatile URIFetcher fetcher;
+	private volatile SingleFlight<IRDFStore> loadedStores;
+	private volatile HostRules hostRules = HostRules.getDefault();
+	private SparqlEndpoints endpoints = new SparqlEndpoints();
+	private volatile IdentityIndex identities;
+	private volatile ExecutorService crawlers;
 
 	Map<String,String> extraHeaders = new HashMap<String, String>() {
 		private static final long serialVersionUID = 2825983879781792266L;
@@ -71,66 +116,11 @@ public class IcebearManager implements IBactingManager {
 		add(new SkosExactMatchExtractor());
 	}};
 
-	private Map<String,String> resourceMap = new HashMap<String, String>() {
-		private static final long serialVersionUID = -7354694153097755405L;
-	{
-		// prepopulate it with things I already know about so that we do not have to look that up
-		put("http://semanticscience.org/resource/CHEMINF_000000", "chemical entity");
-		put("http://bio2rdf.org/ns/chebi#Compound", "compound");
-		put("http://bio2rdf.org/chebi_resource:Compound", "compound");
-		put("http://bio2rdf.org/kegg_resource:Drug", "drug");
-		put("http://bio2rdf.org/drugbank_ontology:drugs", "drug");
-		put("http://bio2rdf.org/drugbank_drugtype:approved", "approved drug");
-		put("http://bio2rdf.org/drugbank_drugtype:smallMolecule", "small molecule");
-		put("http://www.polymerinformatics.com/ChemAxiom/ChemDomain.owl#NamedChemicalSpecies", "named chemical species");
-		put("http://umbel.org/umbel/rc/DrugProduct", "drug product");
-		put("http://umbel.org/umbel/rc/Drug", "drug");
-		put("http://xmlns.com/foaf/0.1/Document", "document");
-		put("http://purl.obolibrary.org/obo/CHEBI_23367", "molecular entity");
-		put("http://www.opentox.org/api/1.1#Compound", "compound");
-		put("http://semanticscience.org/resource/CHEMINF_000113", "InChI");
-		put("http://semanticscience.org/resource/CHEMINF_000140", "PubChem CID");
-		put("http://semanticscience.org/resource/CHEMINF_000334", "molecular weight");
-		put("http://semanticscience.org/resource/CHEMINF_000335", "molecular formula");
-		put("http://semanticscience.org/resource/CHEMINF_000336", "total formal charge");
-		put("http://semanticscience.org/resource/CHEMINF_000337", "monoisotopic mass");
-		put("http://semanticscience.org/resource/CHEMINF_000338", "exact mass");
-		put("http://semanticscience.org/resource/CHEMINF_000369", "covalent unit count");
-		put("http://semanticscience.org/resource/CHEMINF_000370", "defined atom stereocenter count");
-		put("http://semanticscience.org/resource/CHEMINF_000371", "defined bond stereocenter count");
-		put("http://semanticscience.org/resource/CHEMINF_000372", "isotope atom count");
-		put("http://semanticscience.org/resource/CHEMINF_000373", "heavy atom count");
-		put("http://semanticscience.org/resource/CHEMINF_000374", "undefined atom stereocenter count");
-		put("http://semanticscience.org/resource/CHEMINF_000375", "undefined bond stereocenter count");
-		put("http://semanticscience.org/resource/CHEMINF_000376", "canonical smiles");
-		put("http://semanticscience.org/resource/CHEMINF_000379", "isomeric SMILES");
-		put("http://semanticscience.org/resource/CHEMINF_000382", "IUPAC Name");
-		put("http://semanticscience.org/resource/CHEMINF_000387", "hydrogen bond donor count");
-		put("http://semanticscience.org/resource/CHEMINF_000388", "hydrogen bond acceptor count");
-		put("http://semanticscience.org/resource/CHEMINF_000389", "rotatable bond count");
-		put("http://semanticscience.org/resource/CHEMINF_000390", "structure complexity");
-		put("http://semanticscience.org/resource/CHEMINF_000391", "tautomer count");
-		put("http://semanticscience.org/resource/CHEMINF_000392", "TPSA");
-		put("http://semanticscience.org/resource/CHEMINF_000395", "XlogP3");
-		put("http://semanticscience.org/resource/CHEMINF_000396", "InChI (1.0.4)");
-		put("http://semanticscience.org/resource/CHEMINF_000399", "InChIKey (1.0.4)");
-
-		// and also ignore often used things we like to ignore
-		ignore("http://bio2rdf.org/obo_resource:term");
-		ignore("http://bio2rdf.org/obo_resource:Term-chebi");
-		ignore("http://www.w3.org/2002/07/owl#Thing");
-		ignore("http://www.w3.org/2002/07/owl#Class");
-		ignore("http://www.w3.org/2002/07/owl#NamedIndividual");
-		ignore("http://umbel.org/umbel/rc/ChemicalCompoundTypeByChemicalSpecies");
-		ignore("http://umbel.org/umbel#RefConcept");
-		ignore("http://www.w3.org/2000/01/rdf-schema#Class");
-		ignore("http://www.w3.org/2000/01/rdf-schema#Resource");
-		ignore("http://www.opentox.org/api/1.1#Dataset");
-	}
-		public void ignore(String resource) {
-			put(resource, null);
-		}
-	};
+	/** When the content of each store was downloaded, for the exports. */
+	private Map<IRDFStore,Long> fetchTimes = Collections.synchronizedMap(new WeakHashMap<IRDFStore, Long>());
+
+	/** Labels found while crawling, where a null value means the resource is to be ignored. */
+	private Map<String,String> resourceMap = Collections.synchronizedMap(new HashMap<String, String>());
 
 	/**
      * Creates a new IcebearManager.
@@ -139,44 +129,259 @@ public class IcebearManager implements IBactingManager {
      */
 	public IcebearManager(String workspaceRoot) {
 		this.workspaceRoot = workspaceRoot;
-		this.cdk = new CDKManager(this.workspaceRoot);
-		this.rdf = new RDFManager(this.workspaceRoot);
-		this.ui = new UIManager(this.workspaceRoot);
+	}
+
+	/**
+     * Creates a new IcebearManager that uses the given RDFManager, for itself and for all
+     * its extractors, e.g. to share it with the calling script.
+     *
+     * @param workspaceRoot location of the workspace, e.g. "."
+     * @param rdf           the {@link RDFManager} to use
+     */
+	public IcebearManager(String workspaceRoot, RDFManager rdf) {
+		this(workspaceRoot);
+		setRDFManager(rdf);
+	}
+
+	private void setRDFManager(RDFManager rdf) {
+		for (INextURIExtractor spider : spiders) {
+			if (spider instanceof AbstractExtractor) ((AbstractExtractor)spider).setRDFManager(rdf);
+		}
+		for (IPropertyExtractor extractor : extractors) {
+			if (extractor instanceof AbstractExtractor) ((AbstractExtractor)extractor).setRDFManager(rdf);
+		}
+		this.rdf = rdf;
+	}
+
+	/**
+	 * Returns the CDKManager, e.g. to read molecules the same way as this manager does.
+	 */
+	public CDKManager getCDKManager() {
+		return cdk();
+	}
+
+	private CDKManager cdk() {
+		if (cdk == null) {
+			synchronized (this) {
+				if (cdk == null) cdk = new CDKManager(this.workspaceRoot);
+			}
+		}
+		return cdk;
+	}
+
+	/**
+	 * Returns the RDFManager, which is shared with all extractors.
+	 */
+	private RDFManager rdf() {
+		if (rdf == null) {
+			synchronized (this) {
+				if (rdf == null) setRDFManager(new RDFManager(this.workspaceRoot));
+			}
+		}
+		return rdf;
+	}
+
+	private UIManager ui() {
+		if (ui == null) {
+			synchronized (this) {
+				if (ui == null) ui = new UIManager(this.workspaceRoot);
+			}
+		}
+		return ui;
+	}
+
+	private URIFetcher fetcher() {
+		if (fetcher == null) {
+			synchronized (this) {
+				if (fetcher == null) fetcher = new URIFetcher(this.policy, this.extraHeaders);
+			}
+		}
+		return fetcher;
+	}
+
+	private SingleFlight<IRDFStore> loadedStores() {
+		if (loadedStores == null) {
+			synchronized (this) {
+				if (loadedStores == null) loadedStores = new SingleFlight<IRDFStore>(this.policy);
+			}
+		}
+		return loadedStores;
+	}
+
+	private IdentityIndex identities() {
+		if (identities == null) {
+			synchronized (this) {
+				if (identities == null) identities = new IdentityIndex(
+					new File(this.workspaceRoot, "icebear-identities.tsv"), this.policy.getIdentityMaxAge()
+				);
+			}
+		}
+		return identities;
+	}
+
+	private ExecutorService crawlers() {
+		if (crawlers == null) {
+			synchronized (this) {
+				if (crawlers == null) crawlers = Executors.newCachedThreadPool(new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "icebear-crawl");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+		}
+		return crawlers;
+	}
+
+	/**
+	 * Returns the timeouts used while crawling, which can be changed before calling
+	 * {@link #findInfo(IMolecule)}.
+	 */
+	public FetchPolicy getFetchPolicy() {
+		return this.policy;
+	}
+
+	/**
+	 * Returns the SPARQL endpoints used to fetch resources in batches.
+	 */
+	public SparqlEndpoints getSparqlEndpoints() {
+		return this.endpoints;
+	}
+
+	/**
+	 * Adds an extractor for the properties in the reports and exports. None are registered
+	 * by default, so without one {@link #getProperties(IRDFStore)} finds nothing and the
+	 * Arrow and CSV exports only have the column names. Once one is added, the
+	 * {@link SparqlEndpoints} return all predicates, as the extractor may need any of them.
+	 */
+	public void addPropertyExtractor(IPropertyExtractor extractor) {
+		if (extractor instanceof AbstractExtractor) ((AbstractExtractor)extractor).setRDFManager(rdf());
+		extractors.add(extractor);
+		endpoints.setAllPredicates(true);
 	}
 
 	public List<IRDFStore> findInfo(IMolecule mol) throws BioclipseException {
-    	ICDKMolecule cdkMol = cdk.asCDKMolecule(mol);
-    	String inchikey = cdkMol.getInChIKey(Property.USE_CACHED_OR_CALCULATED);
-    	IcebearWorkload workload = new IcebearWorkload();
+    	ICDKMolecule cdkMol = cdk().asCDKMolecule(mol);
+    	return findInfo(cdkMol.getInChIKey(Property.USE_CACHED_OR_CALCULATED));
+	}
+
+	/**
+	 * Returns true if the given string is a standard InChIKey, the only input accepted
+	 * by {@link #findInfo(String)}.
+	 */
+	public static boolean isInChIKey(String inchikey) {
+		return inchikey != null && INCHIKEY.matcher(inchikey).matches();
+	}
+
+	/**
+	 * Finds information for the molecule with the given InChIKey, starting from its Wikidata entity.
+	 *
+	 * @throws MoleculeNotFoundException when Wikidata has no molecule with the InChIKey
+	 */
+	public List<IRDFStore> findInfo(String inchikey) throws BioclipseException {
+    	if (!isInChIKey(inchikey))
+    		throw new BioclipseException("Not a standard InChIKey: " + inchikey);
     	String hasMoleculeByInChI =
    			"PREFIX wdt: <http://www.wikidata.org/prop/direct/>"
 				+ "SELECT ?compound WHERE {"
 				+ "  ?compound wdt:P235  \"" + inchikey + "\" ."
 				+ "}";
-        IStringMatrix results = rdf.sparqlRemote(
+        IStringMatrix results = rdf().sparqlRemote(
         	"https://query.wikidata.org/sparql", hasMoleculeByInChI
         );
         if (results.getRowCount() == 0)
-        	throw new BioclipseException("No molecule in Wikidata with the InChIKey: " + inchikey);
+        	throw new MoleculeNotFoundException("No molecule in Wikidata with the InChIKey: " + inchikey);
         if (results.getRowCount() > 1)
         	throw new BioclipseException("Too many molecules in Wikidata with the InChIKey: " + inchikey);
         String entityID = results.get(1, "compound");
         if (entityID == null || entityID.length() == 0)
         	throw new BioclipseException("No Wikidata entity found for the molecule with the InChIKey: " + inchikey);
-    	workload.addNewURI(entityID);
+        return findInfoForURI(entityID);
+	}
+
+	/**
+	 * Finds information starting from the given resource, e.g. a Wikidata entity.
+	 */
+	public List<IRDFStore> findInfoForURI(String uri) {
+    	IcebearWorkload workload = new IcebearWorkload();
+    	workload.addNewURI(uri);
+    	identities().setMaxAge(policy.getIdentityMaxAge());
+    	addIdentities(workload, uri);
 
+    	long deadline = policy.getCrawlTimeout() > 0
+    		? System.currentTimeMillis() + policy.getCrawlTimeout() : 0;
     	List<IRDFStore> stores = new ArrayList<IRDFStore>();
     	while (workload.hasMoreWork()) {
-    		stores.add(findInfoForOneURI(workload));
+    		if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+    			System.out.println("Crawl deadline reached, returning " + stores.size() + " results");
+    			break;
+    		}
+    		List<IRDFStore> batch = findInfoForBatch(workload, deadline);
+    		if (batch != null) stores.addAll(batch);
+    		else stores.addAll(findInfoForNextURIs(workload, deadline));
+    	}
+    	try {
+    		identities().save();
+    	} catch (IOException exception) {
+    		System.out.println("Error while saving the identity index: " + exception.getMessage());
     	}
     	return stores;
 	}
 
+    /**
+     * Replaces the rules deciding which links are followed while crawling.
+     *
+     * @param filename file with the rules, in the format described in {@link HostRules}
+     */
+    public void setHostRules(String filename) throws BioclipseException {
+    	try {
+    		this.hostRules = HostRules.parse(
+    			new InputStreamReader(new FileInputStream(resolve(filename)), StandardCharsets.UTF_8)
+    		);
+    	} catch (IOException exception) {
+    		throw new BioclipseException("Could not read the host rules: " + exception.getMessage(), exception);
+    	}
+    }
+
+    /**
+     * Finds information for all molecules in an SD or SMILES file and writes the
+     * properties of each molecule as one line of JSON. An interrupted run is resumed
+     * when called again with the same output file.
+     *
+     * @param inputFile  SD file, or SMILES file with the .smi extension
+     * @param outputFile JSON Lines file to write the results to
+     * @param inFlight   maximum number of molecules processed at the same time
+     * @return the output file
+     */
+    public String findInfo(String inputFile, String outputFile, int inFlight) throws BioclipseException {
+    	new BatchRunner(this, inFlight).run(resolve(inputFile), resolve(outputFile));
+    	return outputFile;
+    }
+
+    private File resolve(String filename) {
+    	File file = new File(filename);
+    	if (file.isAbsolute()) return file;
+    	return new File(this.workspaceRoot, filename);
+    }
+
+    /**
+     * Returns the properties of all primary objects in the store, which is more
+     * than one for stores fetched in a batch from a SPARQL endpoint.
+     */
     public List<Entry> getProperties(IRDFStore store) throws BioclipseException, CoreException {
-    	String resource = rdf.getForPredicate(store,
+    	List<String> resources = rdf().getForPredicate(store,
     		"http://www.bioclipse.org/PrimaryObject",
-			"http://www.bioclipse.org/hasURI").get(0);
+			"http://www.bioclipse.org/hasURI");
     	
+		List<Entry> props = new ArrayList<Entry>();
+		for (String resource : resources) {
+			props.addAll(getProperties(store, resource));
+		}
+		return props;
+    }
+
+    public List<Entry> getProperties(IRDFStore store, String resource) {
 		List<Entry> props = new ArrayList<Entry>();
 		for (IPropertyExtractor extractor : extractors) {
 			props.addAll(extractor.extractProperties(store, resource));
@@ -184,28 +389,152 @@ public class IcebearManager implements IBactingManager {
 		return props;
     }
 
-    private IRDFStore findInfoForOneURI(IcebearWorkload workload) {
-    	IRDFStore store = rdf.createInMemoryStore();
-    	URI nextURI = workload.getNextURI();
-		String nextURIString = nextURI.toString();
-    	try {
-			rdf.addObjectProperty(store,
-				"http://www.bioclipse.org/PrimaryObject", "http://www.bioclipse.org/hasURI",
-				nextURI.toString()
-			);
-			rdf.importURL(store, nextURIString, extraHeaders);
-			System.out.println(rdf.asTurtle(store));
-			for (INextURIExtractor spider : spiders) {
-				for (String uri : spider.extractURIs(store, nextURI.toString())) {
-					workload.addNewURI(uri);
-				}
+    /**
+     * Dereferences the scheduled URIs at the same time, up to the parallel fetches of the
+     * {@link FetchPolicy} and of those at most the parallel fetches per host, and then follows
+     * their links. This way the identities known from earlier crawls are not fetched one
+     * after the other.
+     */
+    private List<IRDFStore> findInfoForNextURIs(IcebearWorkload workload, final long deadline) {
+    	List<String> next = workload.getNextURIs(
+    		"", Math.max(1, policy.getParallelFetches()), policy.getParallelFetchesPerHost()
+    	);
+    	if (next.size() == 1) return Collections.singletonList(findInfoForURI(workload, next.get(0), deadline));
+
+    	List<Future<IRDFStore>> loads = new ArrayList<Future<IRDFStore>>();
+    	for (final String uri : next) {
+    		loads.add(crawlers().submit(new Callable<IRDFStore>() {
+    			public IRDFStore call() {
+    				return loadStore(uri, deadline);
+    			}
+    		}));
+    	}
+    	// each load is limited by the timeouts of the fetch policy, but waiting is limited too
+    	long waitUntil = deadline > 0 ? deadline
+    		: policy.getTotalTimeout() > 0 ? System.currentTimeMillis() + 2 * policy.getTotalTimeout() : 0;
+    	List<IRDFStore> stores = new ArrayList<IRDFStore>();
+    	for (int i = 0; i < next.size(); i++) {
+    		try {
+    			IRDFStore store = waitUntil > 0
+    				? loads.get(i).get(Math.max(0, waitUntil - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+    				: loads.get(i).get();
+    			followLinks(workload, store, next.get(i));
+    			stores.add(store);
+    		} catch (TimeoutException exception) {
+    			System.out.println("Gave up waiting for " + next.get(i));
+    			loads.get(i).cancel(true);
+    		} catch (InterruptedException exception) {
+    			for (Future<IRDFStore> load : loads) load.cancel(true);
+    			Thread.currentThread().interrupt();
+    			break;
+    		} catch (ExecutionException exception) {
+    			System.out.println("Error while downloading " + next.get(i) + ": " + exception.getCause());
+    		}
+    	}
+    	return stores;
+    }
+
+    private IRDFStore findInfoForURI(IcebearWorkload workload, String uri, long deadline) {
+		IRDFStore store = loadStore(uri, deadline);
+		followLinks(workload, store, uri);
+    	return store;
+    }
+
+    /**
+     * Fetches scheduled URIs served by one of the {@link SparqlEndpoints} with a single
+     * CONSTRUCT query into one store, or returns null when no such URIs are scheduled.
+     * When the query fails, the URIs are fetched one by one instead.
+     */
+    private List<IRDFStore> findInfoForBatch(IcebearWorkload workload, long deadline) {
+    	for (Map.Entry<String,String> endpoint : endpoints.getEndpoints().entrySet()) {
+    		List<String> batch = workload.getNextURIs(endpoint.getKey(), endpoints.getBatchSize());
+    		if (batch.isEmpty()) continue;
+    		// the same URIs give the same query, so that concurrent crawls can share it
+    		Collections.sort(batch);
+
+    		IRDFStore store = rdf().createInMemoryStore();
+    		try {
+    			for (String uri : batch) addPrimaryObject(store, uri);
+    			addContent(store, endpoints.getQueryURL(endpoint.getValue(), batch), deadline);
+    		} catch (Exception exception) {
+    			System.out.println("Error while querying " + endpoint.getValue() + ", fetching the "
+    				+ batch.size() + " resources one by one: " + exception.getMessage());
+    			List<IRDFStore> stores = new ArrayList<IRDFStore>();
+    			for (String uri : batch) stores.add(findInfoForURI(workload, uri, deadline));
+    			return stores;
+    		}
+    		for (String uri : batch) followLinks(workload, store, uri);
+    		return Collections.singletonList(store);
+    	}
+    	return null;
+    }
+
+    private void followLinks(IcebearWorkload workload, IRDFStore store, String resource) {
+		for (INextURIExtractor spider : spiders) {
+			for (String uri : spider.extractURIs(store, resource)) {
+				String link = hostRules.apply(resource, uri);
+				if (link == null) continue;
+				identities().addLink(resource, link, spider.getClass().getSimpleName());
+				if (workload.addNewURI(link)) addIdentities(workload, link);
 			}
-		} catch (Exception exception) {
-			System.out.println("Error while downloading " + nextURIString + ": " + exception.getMessage());
 		}
+    }
+
+    /**
+     * Schedules all resources known from earlier crawls to be the same as the given one,
+     * instead of finding them again one link at a time.
+     */
+    private void addIdentities(IcebearWorkload workload, String resource) {
+    	for (String identity : identities().getCluster(resource)) {
+    		if (identity.equals(resource)) continue;
+    		String link = hostRules.apply(null, identity);
+    		if (link != null) workload.addNewURI(link);
+    	}
+    }
+
+    /**
+     * Returns a new store with the content of the URI and the URI as primary object.
+     * When the download fails, the store only has the primary object.
+     */
+    private IRDFStore loadStore(String uri, long deadline) {
+    	IRDFStore store = rdf().createInMemoryStore();
+    	try {
+    		addPrimaryObject(store, uri);
+    		addContent(store, uri, deadline);
+    	} catch (Exception exception) {
+    		System.out.println("Error while downloading " + uri + ": " + exception.getMessage());
+    	}
     	return store;
     }
 
+    private void addPrimaryObject(IRDFStore store, String uri) throws BioclipseException {
+    	rdf().addObjectProperty(store,
+    		"http://www.bioclipse.org/PrimaryObject", "http://www.bioclipse.org/hasURI",
+    		uri
+    	);
+    }
+
+    /**
+     * Adds the content downloaded from the URL to the store. Concurrent calls for the same
+     * URL share one download and one parsed copy of its content, which is copied into the
+     * store of each caller, as their primary objects differ, e.g. for hash URIs like
+     * owl#Class and owl#Thing.
+     */
+    private void addContent(IRDFStore store, final String url, final long deadline) throws Exception {
+    	IRDFStore content = loadedStores().get(url, new Callable<IRDFStore>() {
+    		public IRDFStore call() throws Exception {
+    			IRDFStore content = rdf().createInMemoryStore();
+    			importURL(content, url, deadline);
+    			fetchTimes.put(content, System.currentTimeMillis());
+    			return content;
+    		}
+    	}, deadline);
+    	((IJenaStore)store).getModel().add(((IJenaStore)content).getModel());
+    	Long fetchedAt = fetchTimes.get(content);
+    	if (fetchedAt != null) fetchTimes.put(store, fetchedAt);
+    	System.out.println(rdf().asTurtle(store));
+    }
+
     /**
      * Find information in the RDF stores and save it as a HTML file.
      *
@@ -213,6 +542,83 @@ public class IcebearManager implements IBactingManager {
      * @param filenme String of the file to save the HTML file to
      */
     public String saveAsHTML(List<IRDFStore> stores, String filename) throws BioclipseException, CoreException {
+    	String html = asHTML(stores);
+    	try {
+    		if (ui().fileExists(filename)) {
+    			ui().renewFile(filename);
+    			ui().append(filename, html);
+            } else {
+            	ui().newFile(filename, html);
+            }
+    	} catch (Exception encodingExeption) {
+    		throw new BioclipseException("Error encoding problem: " + encodingExeption.getMessage(), encodingExeption);
+    	}
+    	
+    	return filename;
+    }
+
+    /**
+     * Saves the properties found in the RDF stores as an Arrow IPC file, with one row per
+     * property, for analysis with other tools. On Java 16 and later, Arrow needs the JVM
+     * to be started with <code>--add-opens=java.base/java.nio=ALL-UNNAMED</code>.
+     *
+     * @param stores {@link List} of {@link IRDFStore} stores
+     * @param filename String of the file to save the Arrow file to
+     */
+    public String saveAsArrow(List<IRDFStore> stores, String filename) throws BioclipseException, CoreException {
+    	EntryTable table = new EntryTable();
+    	for (IRDFStore store : stores) {
+    		Long fetchedAt = getFetchTime(store);
+    		for (Entry entry : getProperties(store)) table.add(entry, fetchedAt);
+    	}
+    	try {
+    		table.writeArrow(resolve(filename));
+    	} catch (IOException exception) {
+    		throw new BioclipseException("Error while writing " + filename + ": " + exception.getMessage(), exception);
+    	}
+    	return filename;
+    }
+
+    /**
+     * Saves the properties found in the RDF stores as a CSV file, with the same columns
+     * as {@link #saveAsArrow(List, String)}, and with the download times in ISO-8601.
+     *
+     * @param stores {@link List} of {@link IRDFStore} stores
+     * @param filename String of the file to save the CSV file to
+     */
+    public String saveAsCSV(List<IRDFStore> stores, String filename) throws BioclipseException, CoreException {
+    	try {
+    		EntryCSVWriter writer = new EntryCSVWriter(
+    			new OutputStreamWriter(new FileOutputStream(resolve(filename)), StandardCharsets.UTF_8)
+    		);
+    		try {
+    			for (IRDFStore store : stores) {
+    				Long fetchedAt = getFetchTime(store);
+    				for (Entry entry : getProperties(store)) writer.write(entry, fetchedAt);
+    			}
+    		} finally {
+    			writer.close();
+    		}
+    	} catch (IOException exception) {
+    		throw new BioclipseException("Error while writing " + filename + ": " + exception.getMessage(), exception);
+    	}
+    	return filename;
+    }
+
+    /**
+     * Returns when the content of the store was downloaded, or null when that is not known,
+     * e.g. because the download failed.
+     */
+    private Long getFetchTime(IRDFStore store) {
+    	return fetchTimes.get(store);
+    }
+
+    /**
+     * Find information in the RDF stores and return it as HTML.
+     *
+     * @param stores {@link List} of {@link IRDFStore} stores
+     */
+    public String asHTML(List<IRDFStore> stores) throws BioclipseException, CoreException {
     	StringWriter writer = new StringWriter();
     	PrintWriter pWriter = new PrintWriter(writer);
     	
@@ -232,7 +638,7 @@ public class IcebearManager implements IBactingManager {
     	pWriter.println("<body>");
     	pWriter.println("<h1>Isbjørn Report</h1>");
     	for (IRDFStore store : stores) {
-    		List<String> objects = rdf.getForPredicate(
+    		List<String> objects = rdf().getForPredicate(
     			store, "http://www.bioclipse.org/PrimaryObject", "http://www.bioclipse.org/hasURI"
     		);
     		for (String primObject : objects) {
@@ -248,19 +654,7 @@ public class IcebearManager implements IBactingManager {
     	pWriter.println("</body>");
     	pWriter.println("</html>");
     	pWriter.flush();
-
-    	try {
-    		if (ui.fileExists(filename)) {
-    			ui.renewFile(filename);
-    			ui.append(filename, writer.toString());
-            } else {
-            	ui.newFile(filename, writer.toString());
-            }
-    	} catch (Exception encodingExeption) {
-    		throw new BioclipseException("Error encoding problem: " + encodingExeption.getMessage(), encodingExeption);
-    	}
-    	
-    	return filename;
+    	return writer.toString();
     }
 
 	@Override
@@ -291,6 +685,38 @@ public class IcebearManager implements IBactingManager {
 			return nextURI;
 		}
 
+		/**
+		 * Takes up to max scheduled URIs starting with the given prefix.
+		 */
+		public List<String> getNextURIs(String prefix, int max) {
+			return getNextURIs(prefix, max, 0);
+		}
+
+		/**
+		 * Takes up to max scheduled URIs starting with the given prefix, with at most
+		 * maxPerHost URIs of the same host, where zero or less means no such limit.
+		 */
+		public List<String> getNextURIs(String prefix, int max, int maxPerHost) {
+			List<String> nextURIs = new ArrayList<String>();
+			Map<String,Integer> perHost = new HashMap<String, Integer>();
+			Iterator<URI> iterator = todo.iterator();
+			while (iterator.hasNext() && nextURIs.size() < max) {
+				URI uri = iterator.next();
+				if (!uri.toString().startsWith(prefix)) continue;
+				if (maxPerHost > 0) {
+					String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+					Integer count = perHost.get(host);
+					if (count != null && count >= maxPerHost) continue;
+					perHost.put(host, count == null ? 1 : count + 1);
+				}
+				iterator.remove();
+				done.add(uri);
+				nextURIs.add(uri.toString());
+			}
+			if (nextURIs.size() > 0) System.out.println("next URIs: " + nextURIs);
+			return nextURIs;
+		}
+
 		/**
 		 * Returns false when the URI was already processed or is already scheduled.
 		 */
@@ -321,7 +747,7 @@ public class IcebearManager implements IBactingManager {
 
 	    List<Entry> properties;
 		try {
-			properties = getProperties(store);
+			properties = getProperties(store, uri.toString());
 		} catch (Exception e) {
 			pWriter.println("</ul>");
 			return;
@@ -450,13 +876,13 @@ public class IcebearManager implements IBactingManager {
 			String label = key.predicateLabel;
 			System.out.println("predicateLabel: " + key.predicateLabel);
 			System.out.println("predicate: " + key.predicate);
-			if (resourceMap.containsKey(key.predicate)) {
-				label = resourceMap.get(key.predicate);
+			if (hasKnownLabel(key.predicate)) {
+				label = getKnownLabel(key.predicate);
 			} else {
 				// logger.debug("No label for: " + key.predicate);
 			}
 			pWriter.println("    <td valign=\"top\"><b>" + label + "</b></td>");
-			String property = stripDataType(key.object);
+			String property = Entry.stripDataType(key.object);
 			pWriter.println("    <td valign=\"top\">" + property + "</td>");
 			pWriter.println("  </tr>");
 		}
@@ -465,10 +891,22 @@ public class IcebearManager implements IBactingManager {
 	    pWriter.println("</ul>");
 	}
 
-	private String getLabelForResource(IRDFStore currentStore, String resource) {
+	/**
+	 * Returns true when the label is known without going online, either because it was
+	 * found earlier or because it is in the {@link LabelBundle} shipped with Isbjørn.
+	 */
+	private boolean hasKnownLabel(String resource) {
+		return resourceMap.containsKey(resource) || LabelBundle.getDefault().contains(resource);
+	}
+
+	private String getKnownLabel(String resource) {
 		if (resourceMap.containsKey(resource)) return resourceMap.get(resource);
-		if (resource.startsWith("http://rdf.freebase.com/ns/")) return null; // ignore all of them which we did not accept specifically
-		if (resource.startsWith("http://sw.opencyc.org")) return null;
+		return LabelBundle.getDefault().getLabel(resource);
+	}
+
+	private String getLabelForResource(IRDFStore currentStore, String resource) {
+		if (hasKnownLabel(resource)) return getKnownLabel(resource);
+		if (!hostRules.isLabelAllowed(resource)) return null;
 		System.out.println("Needing a label for resource: " + resource);
 
 		// try the current store first
@@ -477,10 +915,9 @@ public class IcebearManager implements IBactingManager {
 		
 		try {
 			URI uri = new URI(resource);
-			IRDFStore store = rdf.createInMemoryStore();
 			System.out.println("Getting a label online for resource: " + resource);
-			rdf.importURL(store, uri.toString(), extraHeaders);
-			System.out.println(rdf.asRDFN3(store)); // so that I can check what is there...
+			IRDFStore store = loadStore(uri.toString(), 0);
+			System.out.println(rdf().asRDFN3(store)); // so that I can check what is there...
 			return getLabelFromStore(resource, store);
 		} catch (Throwable e) {
 			// logger.debug("Something went wrong with getting a label: " + e.getMessage(), e);
@@ -489,6 +926,15 @@ public class IcebearManager implements IBactingManager {
 		}
 	}
 
+	/**
+	 * Downloads the URI with the timeouts of the {@link FetchPolicy} and adds the
+	 * content to the store.
+	 */
+	private void importURL(IRDFStore store, String uri, long deadline) throws Exception {
+		FetchResult result = fetcher().fetch(uri, deadline);
+		rdf().importFromStream(store, new ByteArrayInputStream(result.content), result.getFormat());
+	}
+
 	private String getLabelFromStore(String resource, IRDFStore store) {
 		List<String> labels = new ArrayList<String>();
 		labels.addAll(getPredicate(store, resource, DC.title.toString()));
@@ -520,17 +966,11 @@ public class IcebearManager implements IBactingManager {
 
 	private List<String> getPredicate(IRDFStore store, String resource, String predicate) {
 		try {
-			return rdf.getForPredicate(store, resource, predicate);
+			return rdf().getForPredicate(store, resource, predicate);
 		} catch (Throwable e) {
 			// logger.debug("Error while getting value for " + predicate + ": " + e.getMessage(), e);
 		};
 		return Collections.emptyList();
 	}
-	
-	private String stripDataType(String id) {
-		if (id.contains("^^"))
-			return id.substring(0, id.indexOf("^^"));
-		return id;
-	}
 
 }
@@ -0,0 +1,39 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.managers;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+/**
+ * Measures the time from JVM start to the first results of {@link IcebearManager#findInfo(String)}.
+ * Used by the <code>appcds</code> profile, which also records the classes loaded into a
+ * class data sharing archive. Needs network access.
+ */
+public class StartupBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		long main = System.currentTimeMillis();
+		long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+		String inchikey = args.length > 0 ? args[0] : "VNWKTOKETHGBQD-UHFFFAOYSA-N"; // methane
+
+		IcebearManager icebear = new IcebearManager(Files.createTempDirectory("icebearbench").toString());
+		long created = System.currentTimeMillis();
+		icebear.getFetchPolicy().setCrawlTimeout(60000);
+		int stores = icebear.findInfo(inchikey).size();
+		long found = System.currentTimeMillis();
+
+		System.out.println("JVM start to main:      " + (main - jvmStart) + " ms");
+		System.out.println("manager construction:   " + (created - main) + " ms");
+		System.out.println("first findInfo:         " + (found - created) + " ms (" + stores + " stores)");
+		System.out.println("time to first findInfo: " + (found - jvmStart) + " ms");
+	}
+
+}
@@ -0,0 +1,154 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import net.bioclipse.cdk.domain.ICDKMolecule;
+import net.bioclipse.core.business.BioclipseException;
+
+public class BatchRunnerTest {
+
+	static final int MOLECULES = 20;
+	static final int INTERRUPT_AT = 7;
+
+	@Test
+	public void testResumeWritesEachMoleculeOnce() throws Exception {
+		File dir = Files.createTempDirectory("icebearbatch").toFile();
+		final File input = new File(dir, "input.smi");
+		final File output = new File(dir, "output.jsonl");
+		StringBuilder smiles = new StringBuilder();
+		for (int i = 0; i < MOLECULES; i++) smiles.append("C").append(" mol").append(i).append('\n');
+		Files.write(input.toPath(), smiles.toString().getBytes(StandardCharsets.UTF_8));
+
+		// the first run hangs from the 8th molecule on and is interrupted
+		final CountDownLatch never = new CountDownLatch(1);
+		final BatchRunner first = new BatchRunner(null, 4) {
+			String process(long index, ICDKMolecule mol) {
+				if (index >= INTERRUPT_AT) {
+					try {
+						never.await();
+					} catch (InterruptedException exception) {
+						throw new IllegalStateException("interrupted");
+					}
+				}
+				return line(index);
+			}
+		};
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					first.run(input, output);
+				} catch (Exception exception) {
+					error.set(exception);
+				}
+			}
+		});
+		thread.start();
+		Checkpoint checkpoint = new Checkpoint(new File(output.getPath() + ".checkpoint"));
+		long waitUntil = System.currentTimeMillis() + 10000;
+		while (checkpoint.load().molecules < INTERRUPT_AT && System.currentTimeMillis() < waitUntil) Thread.sleep(10);
+		thread.interrupt();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+		assertTrue(error.get() != null, "the interrupted run should fail");
+		assertEquals(INTERRUPT_AT, checkpoint.load().molecules);
+		assertEquals(INTERRUPT_AT, Files.readAllLines(output.toPath()).size());
+
+		// as if the process died while writing a line after the checkpoint
+		Files.write(output.toPath(), "{\"index\":7,\"tit".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		BatchRunner second = new BatchRunner(null, 4) {
+			String process(long index, ICDKMolecule mol) {
+				if (index < INTERRUPT_AT) throw new IllegalStateException("already done: " + index);
+				if (index == 12) throw new NoClassDefFoundError("some/Missing");
+				return line(index);
+			}
+		};
+		assertEquals(MOLECULES - INTERRUPT_AT, second.run(input, output));
+		List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+		assertEquals(MOLECULES, lines.size());
+		for (int i = 0; i < MOLECULES; i++) {
+			if (i == 12) {
+				assertTrue(lines.get(i).startsWith("{\"index\":12,\"error\":"), lines.get(i));
+			} else {
+				assertEquals(line(i), lines.get(i));
+			}
+		}
+		assertEquals(MOLECULES, checkpoint.load().molecules);
+		assertEquals(output.length(), checkpoint.outputLength);
+	}
+
+	@Test
+	public void testBrokenSDRecord() throws Exception {
+		File dir = Files.createTempDirectory("icebearbatch").toFile();
+		File input = new File(dir, "input.sdf");
+		File output = new File(dir, "output.jsonl");
+		Files.write(input.toPath(), (
+			molfile("first", "  1  0  0  0  0  0  0  0  0  0999 V2000") +
+			molfile("broken", "  3  0  0  0  0  0  0  0  0  0999 V2000") +
+			molfile("last", "  1  0  0  0  0  0  0  0  0  0999 V2000")
+		).getBytes(StandardCharsets.UTF_8));
+
+		BatchRunner runner = new BatchRunner(null, 2) {
+			String process(long index, ICDKMolecule mol) {
+				return line(index);
+			}
+		};
+		assertEquals(3, runner.run(input, output));
+		List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+		assertEquals(3, lines.size());
+		assertEquals(line(0), lines.get(0));
+		assertTrue(lines.get(1).startsWith("{\"index\":1,\"error\":\"record at line 8 "), lines.get(1));
+		assertEquals(line(2), lines.get(2));
+	}
+
+	@Test
+	public void testMissingOutputFails() throws Exception {
+		File dir = Files.createTempDirectory("icebearbatch").toFile();
+		File input = new File(dir, "input.smi");
+		File output = new File(dir, "output.jsonl");
+		Files.write(input.toPath(), "C mol0\nCC mol1\n".getBytes(StandardCharsets.UTF_8));
+		BatchRunner runner = new BatchRunner(null, 2) {
+			String process(long index, ICDKMolecule mol) {
+				return line(index);
+			}
+		};
+		assertEquals(2, runner.run(input, output));
+		assertTrue(output.delete());
+		assertThrows(BioclipseException.class, () -> runner.run(input, output));
+		assertFalse(output.exists());
+	}
+
+	private static String molfile(String title, String counts) {
+		return title + "\n  manual\n\n" + counts + "\n" +
+			"    0.0000    0.0000    0.0000 C   0  0  0  0  0  0  0  0  0  0  0  0\n" +
+			"M  END\n$$$$\n";
+	}
+
+	private static String line(long index) {
+		return "{\"index\":" + index + "}";
+	}
+
+}
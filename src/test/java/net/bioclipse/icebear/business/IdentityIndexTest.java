@@ -0,0 +1,143 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.business;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class IdentityIndexTest {
+
+	static final String WIKIDATA = "http://www.wikidata.org/entity/Q37129";
+	static final String CHEBI = "http://purl.obolibrary.org/obo/CHEBI_16236";
+	static final String DBPEDIA = "http://dbpedia.org/resource/Ethanol";
+	static final String PUBCHEM = "http://rdf.ncbi.nlm.nih.gov/pubchem/compound/CID702";
+
+	@Test
+	public void testClusters() throws Exception {
+		IdentityIndex index = new IdentityIndex(Files.createTempFile("identities", ".tsv").toFile(), 0);
+		index.addLink(WIKIDATA, CHEBI, "SkosExactMatchExtractor");
+		index.addLink(DBPEDIA, PUBCHEM, "OwlSameAsExtractor");
+		assertEquals(2, index.getCluster(CHEBI).size());
+		index.addLink(CHEBI, DBPEDIA, "OwlSameAsExtractor");
+		List<String> cluster = index.getCluster(PUBCHEM);
+		assertEquals(4, cluster.size());
+		assertTrue(cluster.contains(WIKIDATA));
+		assertEquals(1, index.getCluster("http://example.org/unknown").size());
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+		File file = Files.createTempFile("identities", ".tsv").toFile();
+		IdentityIndex index = new IdentityIndex(file, 0);
+		index.addLink(WIKIDATA, CHEBI, "SkosExactMatchExtractor");
+		index.addLink(CHEBI, DBPEDIA, "OwlSameAsExtractor");
+		index.save();
+
+		IdentityIndex reloaded = new IdentityIndex(file, 0);
+		assertEquals(2, reloaded.getLinkCount());
+		assertEquals(3, reloaded.getCluster(DBPEDIA).size());
+	}
+
+	@Test
+	public void testStaleLinksAreDropped() throws Exception {
+		File file = Files.createTempFile("identities", ".tsv").toFile();
+		long now = System.currentTimeMillis();
+		Files.write(file.toPath(), (
+			WIKIDATA + "\t" + CHEBI + "\tSkosExactMatchExtractor\t" + now + "\n" +
+			CHEBI + "\t" + DBPEDIA + "\tOwlSameAsExtractor\t" + (now - 10000000) + "\n"
+		).getBytes(StandardCharsets.UTF_8));
+		IdentityIndex index = new IdentityIndex(file, 1000000);
+		assertEquals(1, index.getLinkCount());
+		assertEquals(2, index.getCluster(WIKIDATA).size());
+		index.save();
+		assertEquals(1, Files.readAllLines(file.toPath()).size());
+	}
+
+	@Test
+	public void testSaveAppendsNewLinks() throws Exception {
+		File file = Files.createTempFile("identities", ".tsv").toFile();
+		IdentityIndex index = new IdentityIndex(file, 0);
+		index.addLink(WIKIDATA, CHEBI, "SkosExactMatchExtractor");
+		index.addLink(CHEBI, DBPEDIA, "OwlSameAsExtractor");
+		index.save();
+		assertEquals(2, Files.readAllLines(file.toPath()).size());
+		index.save(); // nothing new
+		assertEquals(2, Files.readAllLines(file.toPath()).size());
+
+		index.addLink(DBPEDIA, PUBCHEM, "OwlSameAsExtractor");
+		index.addLink(WIKIDATA, CHEBI, "SkosExactMatchExtractor"); // seen again
+		index.save();
+		List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals(4, lines.size());
+		assertTrue(lines.get(0).startsWith(WIKIDATA + "\t" + CHEBI));
+
+		IdentityIndex reloaded = new IdentityIndex(file, 0);
+		assertEquals(3, reloaded.getLinkCount());
+		assertEquals(4, reloaded.getCluster(WIKIDATA).size());
+
+		// the duplicates are removed once the file has twice as many lines as links
+		reloaded.addLink(WIKIDATA, CHEBI, "SkosExactMatchExtractor");
+		reloaded.addLink(CHEBI, DBPEDIA, "OwlSameAsExtractor");
+		reloaded.addLink(DBPEDIA, PUBCHEM, "OwlSameAsExtractor");
+		reloaded.save();
+		assertEquals(3, Files.readAllLines(file.toPath()).size());
+		assertEquals(4, new IdentityIndex(file, 0).getCluster(PUBCHEM).size());
+	}
+
+	@Test
+	public void testLinksExpireInMemory() throws Exception {
+		File file = Files.createTempFile("identities", ".tsv").toFile();
+		IdentityIndex index = new IdentityIndex(file, 200);
+		index.addLink(WIKIDATA, CHEBI, "SkosExactMatchExtractor");
+		index.addLink(CHEBI, DBPEDIA, "OwlSameAsExtractor");
+		index.save();
+		assertEquals(3, index.getCluster(WIKIDATA).size());
+		Thread.sleep(300);
+		index.addLink(DBPEDIA, PUBCHEM, "OwlSameAsExtractor");
+		assertEquals(1, index.getCluster(WIKIDATA).size());
+		assertEquals(2, index.getCluster(PUBCHEM).size());
+		assertEquals(1, index.getLinkCount());
+		index.save();
+		assertEquals(1, Files.readAllLines(file.toPath()).size());
+	}
+
+	@Test
+	public void testShorterMaxAge() throws Exception {
+		IdentityIndex index = new IdentityIndex(Files.createTempFile("identities", ".tsv").toFile(), 0);
+		index.addLink(WIKIDATA, CHEBI, "SkosExactMatchExtractor");
+		Thread.sleep(100);
+		assertEquals(2, index.getCluster(WIKIDATA).size());
+		index.setMaxAge(50);
+		assertEquals(1, index.getCluster(WIKIDATA).size());
+		assertEquals(0, index.getLinkCount());
+	}
+
+	@Test
+	public void testTruncatedLineIsSkipped() throws Exception {
+		File file = Files.createTempFile("identities", ".tsv").toFile();
+		long now = System.currentTimeMillis();
+		Files.write(file.toPath(), (
+			WIKIDATA + "\t" + CHEBI + "\tSkosExactMatchExtractor\t" + now + "\n" +
+			CHEBI + "\t" + DBPEDIA + "\tOwlSa"
+		).getBytes(StandardCharsets.UTF_8));
+		IdentityIndex index = new IdentityIndex(file, 0);
+		assertEquals(1, index.getLinkCount());
+		index.save();
+		assertEquals(1, Files.readAllLines(file.toPath()).size());
+	}
+
+}
@@ -0,0 +1,117 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.extractors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+public class HostRulesTest {
+
+	@Test
+	public void testDefaultRules() {
+		HostRules rules = HostRules.getDefault();
+		assertTrue(rules.size() > 0);
+		String wikidata = "http://www.wikidata.org/entity/Q2270";
+		assertEquals("http://dbpedia.org/resource/Methane", rules.apply(wikidata, "http://dbpedia.org/resource/Methane"));
+		assertNull(rules.apply("http://dbpedia.org/resource/Methane", "http://fr.dbpedia.org/resource/Méthane"));
+		assertNull(rules.apply("http://rdf.freebase.com/ns/m.04kf4", "http://dbpedia.org/resource/Methane"));
+		assertNull(rules.apply(wikidata, "http://dbpedia.org/ontology/ChemicalCompound"));
+		assertNull(rules.apply(null, "http://rdf.freebase.com/ns/m.04kf4"));
+	}
+
+	@Test
+	public void testLabelRulesAreSeparate() throws Exception {
+		HostRules rules = HostRules.getDefault();
+		// not crawled, but still labelled
+		assertNull(rules.apply(null, "http://dbpedia.org/ontology/ChemicalCompound"));
+		assertTrue(rules.isLabelAllowed("http://dbpedia.org/ontology/ChemicalCompound"));
+		assertFalse(rules.isLabelAllowed("http://rdf.freebase.com/ns/m.04kf4"));
+		assertFalse(rules.isLabelAllowed("http://sw.opencyc.org/concept/Mx4rvVjb5pwpEbGdrcN5Y29ycA"));
+
+		rules = HostRules.parse(new StringReader(
+			"label-deny example.org\n" +
+			"label-allow example.org/named/\n"
+		));
+		assertEquals("http://example.org/a", rules.apply(null, "http://example.org/a"));
+		assertFalse(rules.isLabelAllowed("http://example.org/a"));
+		assertTrue(rules.isLabelAllowed("http://example.org/named/a"));
+	}
+
+	@Test
+	public void testMostSpecificRuleWins() throws Exception {
+		HostRules rules = HostRules.parse(new StringReader(
+			"deny example.org\n" +
+			"allow www.example.org/open/  # an exception\n" +
+			"rewrite mirror.org https://fast.mirror.org\n"
+		));
+		assertEquals(3, rules.size());
+		assertNull(rules.apply(null, "http://example.org/a"));
+		assertNull(rules.apply(null, "http://www.example.org/closed/a"));
+		assertEquals("http://www.example.org/open/a", rules.apply(null, "http://www.example.org/open/a"));
+		assertEquals("https://fast.mirror.org/a?b#c", rules.apply(null, "http://mirror.org/a?b#c"));
+		assertEquals("http://notexample.org/", rules.apply(null, "http://notexample.org/"));
+	}
+
+	@Test
+	public void testPathsAreCaseSensitive() throws Exception {
+		HostRules rules = HostRules.parse(new StringReader(
+			"deny WWW.Wikidata.org/entity/Q\n" +
+			"rewrite bio2rdf.org/drugbank_resource:DB mirror.example.org\n"
+		));
+		assertNull(rules.apply(null, "http://www.wikidata.org/entity/Q2270"));
+		assertNull(rules.apply(null, "http://WWW.WIKIDATA.ORG/entity/Q2270"));
+		assertEquals("http://www.wikidata.org/entity/P31", rules.apply(null, "http://www.wikidata.org/entity/P31"));
+		assertEquals("http://www.wikidata.org/entity/q1", rules.apply(null, "http://www.wikidata.org/entity/q1"));
+		assertEquals(
+			"http://mirror.example.org/drugbank_resource:DB00001",
+			rules.apply(null, "http://bio2rdf.org/drugbank_resource:DB00001")
+		);
+	}
+
+	@Test
+	public void testRewrittenLinksAreCheckedAgain() throws Exception {
+		HostRules rules = HostRules.parse(new StringReader(
+			"rewrite old.example.org new.example.org\n" +
+			"deny new.example.org/private/\n" +
+			"rewrite a.example.com b.example.com\n" +
+			"rewrite b.example.com a.example.com\n"
+		));
+		assertEquals("http://new.example.org/public/1", rules.apply(null, "http://old.example.org/public/1"));
+		assertNull(rules.apply(null, "http://old.example.org/private/1"));
+		assertNull(rules.apply(null, "http://a.example.com/loop"));
+	}
+
+	@Test
+	public void testTurkishLocale() throws Exception {
+		Locale locale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			HostRules rules = HostRules.parse(new StringReader("DENY LINKS.example.org\nlabel-deny images.example.org\n"));
+			assertNull(rules.apply(null, "http://links.example.org/a"));
+			assertFalse(rules.isLabelAllowed("http://IMAGES.example.org/a"));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	public void testSyntaxError() {
+		assertThrows(IllegalArgumentException.class, () -> new HostRules().add("block example.org"));
+	}
+
+}
@@ -0,0 +1,38 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyTrackerTest {
+
+	@Test
+	public void testPercentile() {
+		LatencyTracker tracker = new LatencyTracker(100);
+		for (int i = 1; i < LatencyTracker.MIN_SAMPLES; i++) tracker.record(i);
+		assertEquals(-1, tracker.percentile(0.95)); // not enough samples yet
+		for (int i = LatencyTracker.MIN_SAMPLES; i <= 100; i++) tracker.record(i);
+		assertEquals(95, tracker.percentile(0.95));
+		assertEquals(50, tracker.percentile(0.5));
+		assertEquals(100, tracker.percentile(1.0));
+		assertEquals(1, tracker.percentile(0.0));
+	}
+
+	@Test
+	public void testOldestSamplesAreReplaced() {
+		LatencyTracker tracker = new LatencyTracker(10);
+		for (int i = 0; i < 10; i++) tracker.record(1000);
+		for (int i = 0; i < 10; i++) tracker.record(10);
+		assertEquals(10, tracker.percentile(0.95));
+	}
+
+}
@@ -0,0 +1,151 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class SingleFlightTest {
+
+	@Test
+	public void testCanonical() {
+		assertEquals(
+			"http://purl.obolibrary.org/obo/CHEBI_23367",
+			SingleFlight.canonical("HTTP://PURL.obolibrary.org:80/obo/CHEBI_23367#foo")
+		);
+		assertEquals("https://example.org:8443/a?b=c", SingleFlight.canonical("https://Example.org:8443/a?b=c"));
+		assertEquals("urn:foo", SingleFlight.canonical("urn:foo"));
+	}
+
+	@Test
+	public void testConcurrentCallsShareOneLoad() throws Exception {
+		final SingleFlight<Object> flights = new SingleFlight<Object>(new FetchPolicy());
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Object> loader = new Callable<Object>() {
+			public Object call() throws Exception {
+				loads.incrementAndGet();
+				release.await(5, TimeUnit.SECONDS);
+				return new Object();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<Object> first = executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					return flights.get("http://example.org/a", loader);
+				}
+			});
+			Future<Object> second = executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					return flights.get("http://EXAMPLE.org/a", loader);
+				}
+			});
+			Thread.sleep(200);
+			release.countDown();
+			assertSame(first.get(), second.get());
+			// a late caller still gets the retained value
+			assertSame(first.get(), flights.get("http://example.org/a", loader));
+			assertEquals(1, loads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFailuresAreNotShared() throws Exception {
+		final SingleFlight<String> flights = new SingleFlight<String>(new FetchPolicy());
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> first = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return flights.get("http://example.org/a", new Callable<String>() {
+						public String call() throws Exception {
+							started.countDown();
+							release.await(5, TimeUnit.SECONDS);
+							throw new IOException("deadline of the first caller passed");
+						}
+					});
+				}
+			});
+			started.await(5, TimeUnit.SECONDS);
+			Future<String> second = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return flights.get("http://example.org/a", new Callable<String>() {
+						public String call() throws Exception {
+							return "loaded by the second caller";
+						}
+					});
+				}
+			});
+			Thread.sleep(200); // let the second caller join the first load
+			release.countDown();
+			ExecutionException failure = assertThrows(ExecutionException.class, () -> first.get());
+			assertTrue(failure.getCause() instanceof IOException);
+			// the joined caller did not get the failure, but loaded it again itself
+			assertEquals("loaded by the second caller", second.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testJoinedCallerKeepsItsDeadline() throws Exception {
+		final SingleFlight<String> flights = new SingleFlight<String>(new FetchPolicy());
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			// a load without deadline, like that of a label
+			Future<String> first = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return flights.get("http://example.org/a", new Callable<String>() {
+						public String call() throws Exception {
+							started.countDown();
+							release.await(10, TimeUnit.SECONDS);
+							return "slow";
+						}
+					});
+				}
+			});
+			started.await(5, TimeUnit.SECONDS);
+			final long start = System.currentTimeMillis();
+			assertThrows(SocketTimeoutException.class, () -> flights.get("http://example.org/a", new Callable<String>() {
+				public String call() throws Exception {
+					return "not called, as the load is joined";
+				}
+			}, start + 200));
+			long waited = System.currentTimeMillis() - start;
+			assertTrue(waited >= 200 && waited < 5000, "waited " + waited + " ms");
+			release.countDown();
+			assertEquals("slow", first.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class SparqlEndpointsTest {
+
+	static final List<String> ENTITIES = Arrays.asList(
+		"http://www.wikidata.org/entity/Q37129", "http://www.wikidata.org/entity/Q2270"
+	);
+
+	@Test
+	public void testConstructQuery() {
+		SparqlEndpoints endpoints = new SparqlEndpoints();
+		String query = endpoints.getConstructQuery(ENTITIES);
+		assertTrue(query.startsWith("CONSTRUCT { ?s ?p ?o } WHERE {"));
+		assertTrue(query.contains(
+			"VALUES ?s { <http://www.wikidata.org/entity/Q37129> <http://www.wikidata.org/entity/Q2270> }"
+		));
+		for (String predicate : endpoints.getPredicates()) assertTrue(query.contains("<" + predicate + ">"));
+		assertTrue(query.contains("?s ?p ?o ."));
+	}
+
+	@Test
+	public void testAllPredicates() {
+		SparqlEndpoints endpoints = new SparqlEndpoints();
+		assertFalse(endpoints.isAllPredicates());
+		endpoints.setAllPredicates(true);
+		String query = endpoints.getConstructQuery(ENTITIES);
+		assertTrue(query.contains("<http://www.wikidata.org/entity/Q2270>"));
+		assertFalse(query.contains("VALUES ?p"));
+		for (String predicate : endpoints.getPredicates()) assertFalse(query.contains("<" + predicate + ">"));
+		assertTrue(query.contains("?s ?p ?o ."));
+	}
+
+	@Test
+	public void testQueryURL() throws Exception {
+		SparqlEndpoints endpoints = new SparqlEndpoints();
+		String url = endpoints.getQueryURL("https://query.wikidata.org/sparql", ENTITIES);
+		assertTrue(url.startsWith("https://query.wikidata.org/sparql?query="));
+		String query = url.substring(url.indexOf("query=") + 6);
+		assertFalse(query.contains(" ") || query.contains("<") || query.contains("{"));
+		assertEquals(endpoints.getConstructQuery(ENTITIES), URLDecoder.decode(query, "UTF-8"));
+
+		// endpoints that already have parameters
+		url = endpoints.getQueryURL("http://localhost:3030/ds/sparql?default-graph-uri=urn:x", ENTITIES);
+		assertTrue(url.startsWith("http://localhost:3030/ds/sparql?default-graph-uri=urn:x&query="));
+	}
+
+	@Test
+	public void testRegister() {
+		SparqlEndpoints endpoints = new SparqlEndpoints();
+		assertEquals("https://query.wikidata.org/sparql", endpoints.getEndpoints().get("http://www.wikidata.org/entity/"));
+		endpoints.register("http://example.org/chem/", "http://localhost:3030/chem/sparql");
+		assertEquals(2, endpoints.getEndpoints().size());
+		endpoints.unregister("http://www.wikidata.org/entity/");
+		assertEquals(1, endpoints.getEndpoints().size());
+	}
+
+}
@@ -0,0 +1,240 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+public class URIFetcherTest {
+
+	static HttpServer server;
+	static ExecutorService executor;
+	static String base;
+
+	static AtomicInteger slowRequests = new AtomicInteger();
+	static AtomicInteger fastRequests = new AtomicInteger();
+	static volatile CountDownLatch releaseSlow;
+	static volatile CountDownLatch slowAborted;
+
+	@BeforeAll
+	static void startServer() throws Exception {
+		executor = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/fast", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				fastRequests.incrementAndGet();
+				send(exchange, "fast");
+			}
+		});
+		server.createContext("/slow", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				slowRequests.incrementAndGet();
+				try {
+					releaseSlow.await(10, TimeUnit.SECONDS);
+					// a client that gave up has closed the connection, so writing a lot fails
+					exchange.sendResponseHeaders(200, 0);
+					OutputStream output = exchange.getResponseBody();
+					byte[] chunk = new byte[64 * 1024];
+					for (int i = 0; i < 256; i++) {
+						output.write(chunk);
+						output.flush();
+					}
+					output.close();
+				} catch (IOException exception) {
+					slowAborted.countDown();
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@AfterAll
+	static void stopServer() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	@BeforeEach
+	void resetCounts() {
+		slowRequests.set(0);
+		fastRequests.set(0);
+		releaseSlow = new CountDownLatch(1);
+		slowAborted = new CountDownLatch(1);
+	}
+
+	@AfterEach
+	void releaseSlowRequests() {
+		releaseSlow.countDown();
+	}
+
+	@Test
+	public void testHedgedRequestWins() throws Exception {
+		FetchPolicy policy = new FetchPolicy();
+		policy.setMinimalHedgeDelay(100);
+		policy.getMirrors().put(base + "/slow", base + "/fast");
+		URIFetcher fetcher = new URIFetcher(policy, new HashMap<String, String>());
+		// learn the normal latency of the host first
+		for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) fetcher.fetch(base + "/fast");
+		fastRequests.set(0);
+
+		long start = System.currentTimeMillis();
+		FetchResult result = fetcher.fetch(base + "/slow");
+		long elapsed = System.currentTimeMillis() - start;
+		assertEquals("fast", new String(result.content, StandardCharsets.UTF_8));
+		assertEquals(1, slowRequests.get());
+		assertEquals(1, fastRequests.get());
+		assertTrue(elapsed >= 100, "hedged before the hedge delay: " + elapsed);
+		assertTrue(elapsed < 5000, "waited for the slow request: " + elapsed);
+
+		// the slow request was aborted, so the server cannot send its answer
+		releaseSlow.countDown();
+		assertTrue(slowAborted.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testNoHedgeWithoutHistory() throws Exception {
+		FetchPolicy policy = new FetchPolicy();
+		policy.setMinimalHedgeDelay(10);
+		policy.getMirrors().put(base + "/slow", base + "/fast");
+		URIFetcher fetcher = new URIFetcher(policy, new HashMap<String, String>());
+		releaseSlow.countDown(); // answers right away, but slower than nothing
+		fetcher.fetch(base + "/slow");
+		assertEquals(0, fastRequests.get());
+	}
+
+	@Test
+	public void testDeadline() throws Exception {
+		FetchPolicy policy = new FetchPolicy();
+		policy.setHedgePercentile(1.0);
+		URIFetcher fetcher = new URIFetcher(policy, new HashMap<String, String>());
+		final long start = System.currentTimeMillis();
+		assertThrows(SocketTimeoutException.class, () -> fetcher.fetch(base + "/slow", start + 300));
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(elapsed >= 300 && elapsed < 5000, "gave up after " + elapsed + " ms");
+	}
+
+	@Test
+	public void testRedirectToHttps() throws Exception {
+		char[] password = "changeit".toCharArray();
+		SSLContext ssl = createSSLContext(password);
+		HttpsServer secure = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		secure.setHttpsConfigurator(new HttpsConfigurator(ssl));
+		secure.createContext("/target", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, "secure");
+			}
+		});
+		secure.start();
+		final String target = "https://127.0.0.1:" + secure.getAddress().getPort() + "/target";
+		server.createContext("/redirect", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().set("Location", target);
+				exchange.sendResponseHeaders(301, -1);
+				exchange.close();
+			}
+		});
+		SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+		HttpsURLConnection.setDefaultSSLSocketFactory(ssl.getSocketFactory());
+		try {
+			URIFetcher fetcher = new URIFetcher(new FetchPolicy(), new HashMap<String, String>());
+			FetchResult result = fetcher.fetch(base + "/redirect");
+			assertEquals("secure", new String(result.content, StandardCharsets.UTF_8));
+			assertEquals(base + "/redirect", result.uri);
+		} finally {
+			HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+			server.removeContext("/redirect");
+			secure.stop(0);
+		}
+	}
+
+	/**
+	 * Creates a self-signed certificate for 127.0.0.1 with the keytool of the running Java.
+	 */
+	private static SSLContext createSSLContext(char[] password) throws Exception {
+		File keystore = File.createTempFile("icebear", ".p12");
+		keystore.delete();
+		keystore.deleteOnExit();
+		Process keytool = new ProcessBuilder(
+			new File(new File(System.getProperty("java.home"), "bin"), "keytool").getPath(),
+			"-genkeypair", "-alias", "icebear", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+			"-dname", "CN=127.0.0.1", "-ext", "san=ip:127.0.0.1", "-storetype", "PKCS12",
+			"-keystore", keystore.getPath(), "-storepass", new String(password), "-keypass", new String(password)
+		).redirectErrorStream(true).start();
+		InputStream output = keytool.getInputStream();
+		while (output.read() != -1) {} // keytool may block on a full pipe
+		assertEquals(0, keytool.waitFor());
+
+		KeyStore store = KeyStore.getInstance("PKCS12");
+		FileInputStream input = new FileInputStream(keystore);
+		try {
+			store.load(input, password);
+		} finally {
+			input.close();
+		}
+		KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keys.init(store, password);
+		TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trust.init(store);
+		SSLContext ssl = SSLContext.getInstance("TLS");
+		ssl.init(keys.getKeyManagers(), trust.getTrustManagers(), null);
+		return ssl;
+	}
+
+	private static void send(HttpExchange exchange, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/turtle");
+		exchange.sendResponseHeaders(200, bytes.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(bytes);
+		output.close();
+	}
+
+}
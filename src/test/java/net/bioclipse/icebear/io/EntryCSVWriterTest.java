@@ -0,0 +1,45 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+import net.bioclipse.icebear.business.Entry;
+
+public class EntryCSVWriterTest {
+
+	@Test
+	public void testQuoting() throws Exception {
+		StringWriter output = new StringWriter();
+		EntryCSVWriter writer = new EntryCSVWriter(output);
+		writer.write(new Entry(
+			"http://example.org/chem/1", "Description", "http://purl.org/dc/terms/description",
+			"a \"small\", flammable\r\ngas@en^^http://www.w3.org/1999/02/22-rdf-syntax-ns#langString"
+		), 1625097600000L);
+		writer.write(new Entry("urn:x", null, "http://www.w3.org/2000/01/rdf-schema#label", "methane"), null);
+		writer.write(new Entry("http://example.org/chem/2", null, "http://www.w3.org/2000/01/rdf-schema#label", "ethane"), 1625097600123L);
+		writer.close();
+
+		assertEquals(
+			"resource,predicate,label,object,datatype,source_host,fetched_at\r\n" +
+			"http://example.org/chem/1,http://purl.org/dc/terms/description,Description," +
+				"\"a \"\"small\"\", flammable\r\ngas@en\"," +
+				"http://www.w3.org/1999/02/22-rdf-syntax-ns#langString,example.org,2021-07-01T00:00:00Z\r\n" +
+			"urn:x,http://www.w3.org/2000/01/rdf-schema#label,,methane,,,\r\n" +
+			"http://example.org/chem/2,http://www.w3.org/2000/01/rdf-schema#label,,ethane,,example.org,2021-07-01T00:00:00.123Z\r\n",
+			output.toString()
+		);
+	}
+
+}
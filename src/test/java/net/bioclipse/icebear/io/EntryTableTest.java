@@ -0,0 +1,131 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Test;
+
+import net.bioclipse.icebear.business.Entry;
+
+public class EntryTableTest {
+
+	/** More than one record batch. */
+	static final int ROWS = 70000;
+	static final long TIME = 1625097600000L;
+
+	@Test
+	public void testArrowRoundTrip() throws Exception {
+		EntryTable table = new EntryTable();
+		for (int i = 0; i < ROWS; i++) table.add(entry(i), i % 5 == 0 ? null : TIME + i);
+		assertEquals(ROWS, table.size());
+		File file = File.createTempFile("icebear", ".arrow");
+		file.deleteOnExit();
+		table.writeArrow(file);
+
+		try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+			 FileInputStream input = new FileInputStream(file);
+			 ArrowFileReader reader = new ArrowFileReader(input.getChannel(), allocator)) {
+			VectorSchemaRoot root = reader.getVectorSchemaRoot();
+			assertEquals(EntryRows.COLUMNS.length, root.getSchema().getFields().size());
+			for (int i = 0; i < EntryRows.COLUMNS.length; i++) {
+				assertEquals(EntryRows.COLUMNS[i], root.getSchema().getFields().get(i).getName());
+			}
+			assertEquals(2, reader.getRecordBlocks().size());
+			Map<Long,Dictionary> dictionaries = reader.getDictionaryVectors();
+
+			int row = 0;
+			while (reader.loadNextBatch()) {
+				assertTrue(root.getRowCount() <= 65536);
+				for (int i = 0; i < root.getRowCount(); i++, row++) {
+					Entry expected = entry(row);
+					assertEquals(expected.resource, decode(root, dictionaries, "resource", i));
+					assertEquals(expected.predicate, decode(root, dictionaries, "predicate", i));
+					assertEquals(expected.predicateLabel, decode(root, dictionaries, "label", i));
+					assertEquals("value " + row, string((VarCharVector)root.getVector("object"), i));
+					assertEquals(
+						row % 3 == 0 ? null : "http://www.w3.org/2001/XMLSchema#string",
+						decode(root, dictionaries, "datatype", i)
+					);
+					assertEquals("example.org", decode(root, dictionaries, "source_host", i));
+					TimeStampMilliTZVector time = (TimeStampMilliTZVector)root.getVector("fetched_at");
+					if (row % 5 == 0) assertTrue(time.isNull(i));
+					else assertEquals(TIME + row, time.get(i));
+				}
+			}
+			assertEquals(ROWS, row);
+			// repeated values are stored once
+			Field predicate = root.getSchema().findField("predicate");
+			assertEquals(2, dictionaries.get(predicate.getDictionary().getId()).getVector().getValueCount());
+		}
+	}
+
+	@Test
+	public void testEmptyTable() throws Exception {
+		File file = File.createTempFile("icebear", ".arrow");
+		file.deleteOnExit();
+		new EntryTable().writeArrow(file);
+		try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+			 FileInputStream input = new FileInputStream(file);
+			 ArrowFileReader reader = new ArrowFileReader(input.getChannel(), allocator)) {
+			assertNotNull(reader.getVectorSchemaRoot());
+			assertEquals(0, reader.getRecordBlocks().size());
+		}
+	}
+
+	@Test
+	public void testDataType() {
+		assertNull(Entry.stripDataType(null));
+		assertNull(Entry.getDataType("plain"));
+		assertEquals("1.2", Entry.stripDataType("1.2^^http://www.w3.org/2001/XMLSchema#double"));
+	}
+
+	/**
+	 * Returns rows with few distinct resources and predicates, and some without label or datatype.
+	 */
+	private static Entry entry(int row) {
+		return new Entry(
+			"http://example.org/chem/" + (row % 100),
+			row % 7 == 0 ? null : "Label",
+			row % 2 == 0 ? "http://www.w3.org/2000/01/rdf-schema#label" : "http://purl.org/dc/terms/title",
+			"value " + row + (row % 3 == 0 ? "" : "^^http://www.w3.org/2001/XMLSchema#string")
+		);
+	}
+
+	private static String decode(VectorSchemaRoot root, Map<Long,Dictionary> dictionaries, String column, int row) {
+		IntVector indices = (IntVector)root.getVector(column);
+		if (indices.isNull(row)) return null;
+		long id = root.getSchema().findField(column).getDictionary().getId();
+		return string((VarCharVector)dictionaries.get(id).getVector(), indices.get(row));
+	}
+
+	private static String string(VarCharVector vector, int index) {
+		if (vector.isNull(index)) return null;
+		return new String(vector.get(index), StandardCharsets.UTF_8);
+	}
+
+}
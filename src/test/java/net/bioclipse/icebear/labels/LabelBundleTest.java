@@ -0,0 +1,56 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.labels;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+public class LabelBundleTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		LabelBundleBuilder builder = new LabelBundleBuilder();
+		builder.addTSV(new ByteArrayInputStream((
+			"# comment\n" +
+			"http://semanticscience.org/resource/CHEMINF_000392\tTPSA\n" +
+			"http://www.w3.org/2002/07/owl#Thing\t\n" +
+			"?p\t?label\n" +
+			"<http://www.wikidata.org/prop/direct/P235>\t\"InChIKey\"@en\n" +
+			"http://semanticscience.org/resource/CHEMINF_000392\tnot the first\n"
+		).getBytes(StandardCharsets.UTF_8)));
+		File file = Files.createTempFile("labels", ".bin").toFile();
+		builder.write(file);
+
+		LabelBundle bundle = LabelBundle.open(file);
+		assertEquals(3, bundle.size());
+		assertEquals("TPSA", bundle.getLabel("http://semanticscience.org/resource/CHEMINF_000392"));
+		assertEquals("InChIKey", bundle.getLabel("http://www.wikidata.org/prop/direct/P235"));
+		assertTrue(bundle.contains("http://www.w3.org/2002/07/owl#Thing"));
+		assertNull(bundle.getLabel("http://www.w3.org/2002/07/owl#Thing"));
+		assertFalse(bundle.contains("http://example.org/unknown"));
+	}
+
+	@Test
+	public void testCuratedLabelsWithoutCompiledBundle() throws Exception {
+		LabelBundle bundle = LabelBundle.loadCurated();
+		assertTrue(bundle.size() > 0);
+		assertEquals("chemical entity", bundle.getLabel("http://semanticscience.org/resource/CHEMINF_000000"));
+	}
+
+}
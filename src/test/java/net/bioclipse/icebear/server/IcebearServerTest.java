@@ -0,0 +1,159 @@
+/* Copyright (c) 2021  Egon Willighagen <egon.willighagen@gmail.com>
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contact: http://www.bioclipse.net/
+ */
+package net.bioclipse.icebear.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.bioclipse.core.business.BioclipseException;
+import net.bioclipse.icebear.business.MoleculeNotFoundException;
+import net.bioclipse.managers.IcebearManager;
+import net.bioclipse.rdf.business.IRDFStore;
+
+public class IcebearServerTest {
+
+	static final String METHANE = "VNWKTOKETHGBQD-UHFFFAOYSA-N";
+	static final String UNKNOWN = "AAAAAAAAAAAAAA-UHFFFAOYSA-N";
+	static final String BROKEN = "BBBBBBBBBBBBBB-UHFFFAOYSA-N";
+
+	IcebearServer server;
+	String base;
+	CountDownLatch release;
+	AtomicInteger lookups = new AtomicInteger();
+
+	@BeforeEach
+	void startServer() throws Exception {
+		release = new CountDownLatch(1);
+		String workspaceRoot = Files.createTempDirectory("icebearserverws").toString();
+		// a crawl that waits until the test lets it go, instead of asking Wikidata
+		IcebearManager icebear = new IcebearManager(workspaceRoot) {
+			public List<IRDFStore> findInfo(String inchikey) throws BioclipseException {
+				lookups.incrementAndGet();
+				if (UNKNOWN.equals(inchikey)) throw new MoleculeNotFoundException("No molecule: " + inchikey);
+				if (BROKEN.equals(inchikey)) throw new BioclipseException("Read timed out");
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException exception) {
+					throw new BioclipseException("Interrupted");
+				}
+				return new ArrayList<IRDFStore>();
+			}
+		};
+		server = new IcebearServer(icebear, 1, 1);
+		server.start(0);
+		base = "http://127.0.0.1:" + server.getPort();
+	}
+
+	@AfterEach
+	void stopServer() {
+		release.countDown();
+		server.stop();
+	}
+
+	@Test
+	public void testAdmissionControl() throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<Integer>> admitted = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 2; i++) {
+				admitted.add(clients.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						return open("/findInfo?inchikey=" + METHANE).getResponseCode();
+					}
+				}));
+			}
+			// one request crawls, the other waits for its turn
+			long waitUntil = System.currentTimeMillis() + 10000;
+			String metrics = get("/metrics");
+			while (!(metrics.contains("icebear_requests_running 1\n") && metrics.contains("icebear_requests_queued 1\n"))
+					&& System.currentTimeMillis() < waitUntil) {
+				Thread.sleep(10);
+				metrics = get("/metrics");
+			}
+			assertTrue(metrics.contains("icebear_requests_running 1\n"), metrics);
+			assertTrue(metrics.contains("icebear_requests_queued 1\n"), metrics);
+
+			HttpURLConnection rejected = open("/findInfo?inchikey=" + METHANE);
+			assertEquals(503, rejected.getResponseCode());
+			assertEquals("10", rejected.getHeaderField("Retry-After"));
+
+			release.countDown();
+			for (Future<Integer> request : admitted) assertEquals(200, request.get(10, TimeUnit.SECONDS).intValue());
+			assertEquals(2, lookups.get());
+			metrics = get("/metrics");
+			assertTrue(metrics.contains("icebear_requests_running 0\n"), metrics);
+			assertTrue(metrics.contains("icebear_requests_queued 0\n"), metrics);
+			assertTrue(metrics.contains("icebear_requests_completed_total 2\n"), metrics);
+			assertTrue(metrics.contains("icebear_requests_rejected_total 1\n"), metrics);
+		} finally {
+			clients.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testInvalidInChIKey() throws Exception {
+		String injected = METHANE + "\" } ?s ?p ?o { \"";
+		assertEquals(400, open("/findInfo?inchikey=" + URLEncoder.encode(injected, "UTF-8")).getResponseCode());
+		assertEquals(400, open("/findInfo?inchikey=vnwktokethgbqd-uhfffaoysa-n").getResponseCode());
+		assertEquals(0, lookups.get());
+	}
+
+	@Test
+	public void testErrorStatus() throws Exception {
+		assertEquals(404, open("/findInfo?inchikey=" + UNKNOWN).getResponseCode());
+		assertEquals(502, open("/findInfo?inchikey=" + BROKEN).getResponseCode());
+		assertEquals(2, lookups.get());
+	}
+
+	private HttpURLConnection open(String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(base + path).openConnection();
+		connection.setConnectTimeout(5000);
+		connection.setReadTimeout(15000);
+		return connection;
+	}
+
+	private String get(String path) throws IOException {
+		HttpURLConnection connection = open(path);
+		assertEquals(200, connection.getResponseCode());
+		InputStream input = connection.getInputStream();
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = input.read(buffer)) != -1) body.write(buffer, 0, read);
+			return new String(body.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			input.close();
+		}
+	}
+
+}
@@ -9,20 +9,52 @@
  */
 package net.bioclipse.managers;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.bioclipse.icebear.business.Entry;
+import net.bioclipse.icebear.extractors.IPropertyExtractor;
+import net.bioclipse.rdf.business.IRDFStore;
+
 public class IcebearManagerTest {
 
 	static IcebearManager icebear;
 	static String workspaceRoot;
 
+	/** Stands in for a local SPARQL endpoint, like Fuseki, and the resources it has. */
+	static HttpServer server;
+	static String base;
+	static AtomicInteger queries = new AtomicInteger();
+	static AtomicInteger dereferenced = new AtomicInteger();
+	static AtomicInteger dereferencing = new AtomicInteger();
+	static AtomicInteger maxDereferencing = new AtomicInteger();
+
 	@BeforeAll
 	static void setupManager() throws Exception {
 		workspaceRoot = Files.createTempDirectory("icebeartestws").toString();
@@ -30,6 +62,68 @@ public class IcebearManagerTest {
 		assertNotNull(icebear);
 	}
 
+	@BeforeAll
+	static void startEndpoint() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+		final HttpHandler sparql = new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				queries.incrementAndGet();
+				String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery().substring(6), "UTF-8");
+				StringBuilder turtle = new StringBuilder();
+				for (String resource : new String[] { base + "/chem/1", base + "/chem/2" }) {
+					if (query.contains("<" + resource + ">")) turtle.append(describe(resource));
+				}
+				send(exchange, 200, turtle.toString());
+			}
+		};
+		server.createContext("/sparql", sparql);
+		server.createContext("/slowsparql", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(300); // so that both crawls ask for it at the same time
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				}
+				sparql.handle(exchange);
+			}
+		});
+		server.createContext("/broken", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				queries.incrementAndGet();
+				send(exchange, 500, "");
+			}
+		});
+		server.createContext("/chem/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				dereferenced.incrementAndGet();
+				int running = dereferencing.incrementAndGet();
+				maxDereferencing.accumulateAndGet(running, Math::max);
+				try {
+					Thread.sleep(100); // so that concurrent requests overlap
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				}
+				dereferencing.decrementAndGet();
+				send(exchange, 200, describe(base + exchange.getRequestURI().getPath()));
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@AfterAll
+	static void stopEndpoint() {
+		server.stop(0);
+	}
+
+	@BeforeEach
+	void resetCounts() {
+		queries.set(0);
+		dereferenced.set(0);
+		maxDereferencing.set(0);
+	}
+
 	@Test
 	public void testDOIs() {
 		List<String> dois = icebear.doi();
@@ -42,4 +136,175 @@ public class IcebearManagerTest {
 		assertSame("isbjørn", icebear.getManagerName());
 	}
 
+	@Test
+	public void testIsInChIKey() {
+		assertTrue(IcebearManager.isInChIKey("VNWKTOKETHGBQD-UHFFFAOYSA-N"));
+		assertFalse(IcebearManager.isInChIKey("vnwktokethgbqd-uhfffaoysa-n"));
+		assertFalse(IcebearManager.isInChIKey("VNWKTOKETHGBQD-UHFFFAOYSA-N\" } ?s ?p ?o { \""));
+		assertFalse(IcebearManager.isInChIKey(null));
+	}
+
+	@Test
+	public void testGetNextURIs() {
+		IcebearManager.IcebearWorkload workload = icebear.new IcebearWorkload();
+		for (int i = 0; i < 5; i++) workload.addNewURI("http://www.wikidata.org/entity/Q" + i);
+		workload.addNewURI("http://dbpedia.org/resource/Methane");
+
+		List<String> batch = workload.getNextURIs("http://www.wikidata.org/entity/", 3);
+		assertEquals(3, batch.size());
+		for (String uri : batch) {
+			assertTrue(uri.startsWith("http://www.wikidata.org/entity/"));
+			assertFalse(workload.addNewURI(uri)); // already done
+		}
+		assertEquals(2, workload.getNextURIs("http://www.wikidata.org/entity/", 3).size());
+		assertEquals(0, workload.getNextURIs("http://www.wikidata.org/entity/", 3).size());
+		assertTrue(workload.hasMoreWork());
+		assertEquals("http://dbpedia.org/resource/Methane", workload.getNextURI().toString());
+		assertFalse(workload.hasMoreWork());
+	}
+
+	@Test
+	public void testGetNextURIsPerHost() {
+		IcebearManager.IcebearWorkload workload = icebear.new IcebearWorkload();
+		for (int i = 0; i < 3; i++) workload.addNewURI("http://www.wikidata.org/entity/Q" + i);
+		workload.addNewURI("http://dbpedia.org/resource/Methane");
+
+		List<String> batch = workload.getNextURIs("", 8, 1);
+		assertEquals(2, batch.size());
+		assertTrue(batch.contains("http://dbpedia.org/resource/Methane"));
+		assertEquals(1, workload.getNextURIs("", 8, 1).size());
+		assertEquals(1, workload.getNextURIs("", 8, 1).size());
+		assertFalse(workload.hasMoreWork());
+	}
+
+	@Test
+	public void testLocalEndpoint() throws Exception {
+		IcebearManager manager = newManager();
+		manager.getSparqlEndpoints().register(base + "/chem/", base + "/sparql");
+
+		List<IRDFStore> stores = manager.findInfoForURI(base + "/chem/1");
+		assertEquals(2, stores.size());
+		assertEquals(2, queries.get()); // the second resource was found in the first
+		assertEquals(0, dereferenced.get());
+		List<String> primaryObjects = getPrimaryObjects(stores);
+		assertTrue(primaryObjects.contains(base + "/chem/1"));
+		assertTrue(primaryObjects.contains(base + "/chem/2"));
+
+		// the second time both are known to be the same, and are queried at once
+		stores = manager.findInfoForURI(base + "/chem/1");
+		assertEquals(1, stores.size());
+		assertEquals(3, queries.get());
+		assertEquals(2, getPrimaryObjects(stores).size());
+	}
+
+	@Test
+	public void testConcurrentCrawlsShareQueries() throws Exception {
+		final IcebearManager manager = newManager();
+		manager.getSparqlEndpoints().register(base + "/chem/", base + "/slowsparql");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<List<IRDFStore>>> crawls = new ArrayList<Future<List<IRDFStore>>>();
+			for (int i = 0; i < 2; i++) {
+				crawls.add(executor.submit(new Callable<List<IRDFStore>>() {
+					public List<IRDFStore> call() throws Exception {
+						return manager.findInfoForURI(base + "/chem/1");
+					}
+				}));
+			}
+			for (Future<List<IRDFStore>> crawl : crawls) assertEquals(2, crawl.get().size());
+			assertEquals(2, queries.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFailingEndpoint() throws Exception {
+		IcebearManager manager = newManager();
+		manager.getSparqlEndpoints().register(base + "/chem/", base + "/broken");
+
+		List<IRDFStore> stores = manager.findInfoForURI(base + "/chem/1");
+		// the resources are not dropped, but dereferenced one by one
+		assertEquals(2, stores.size());
+		assertEquals(2, queries.get());
+		assertEquals(2, dereferenced.get());
+		List<String> primaryObjects = getPrimaryObjects(stores);
+		assertTrue(primaryObjects.contains(base + "/chem/1"));
+		assertTrue(primaryObjects.contains(base + "/chem/2"));
+	}
+
+	@Test
+	public void testKnownIdentitiesAreFetchedConcurrently() throws Exception {
+		IcebearManager manager = newManager();
+		manager.getFetchPolicy().setSharedRetention(0); // so that the second crawl fetches again
+		manager.getFetchPolicy().setParallelFetches(2);
+		assertEquals(2, manager.findInfoForURI(base + "/chem/1").size());
+		assertEquals(2, dereferenced.get());
+		assertEquals(1, maxDereferencing.get()); // the second resource was found in the first
+
+		dereferenced.set(0);
+		List<IRDFStore> stores = manager.findInfoForURI(base + "/chem/1");
+		assertEquals(2, stores.size());
+		assertEquals(2, dereferenced.get());
+		assertEquals(2, maxDereferencing.get());
+		List<String> primaryObjects = getPrimaryObjects(stores);
+		assertTrue(primaryObjects.contains(base + "/chem/1"));
+		assertTrue(primaryObjects.contains(base + "/chem/2"));
+
+		// both are on the same host
+		dereferenced.set(0);
+		maxDereferencing.set(0);
+		manager.getFetchPolicy().setParallelFetchesPerHost(1);
+		assertEquals(2, manager.findInfoForURI(base + "/chem/1").size());
+		assertEquals(2, dereferenced.get());
+		assertEquals(1, maxDereferencing.get());
+	}
+
+	@Test
+	public void testPropertyExtractorsGetAllPredicates() throws Exception {
+		IcebearManager manager = newManager();
+		assertFalse(manager.getSparqlEndpoints().isAllPredicates());
+		manager.addPropertyExtractor(new IPropertyExtractor() {
+			public List<Entry> extractProperties(IRDFStore store, String resource) {
+				return new ArrayList<Entry>();
+			}
+		});
+		assertTrue(manager.getSparqlEndpoints().isAllPredicates());
+	}
+
+	/**
+	 * Returns a manager with its own workspace, and so without identities found in other tests.
+	 */
+	private IcebearManager newManager() throws IOException {
+		return new IcebearManager(Files.createTempDirectory("icebeartestws").toString());
+	}
+
+	private List<String> getPrimaryObjects(List<IRDFStore> stores) throws Exception {
+		RDFManager rdf = new RDFManager(workspaceRoot);
+		List<String> primaryObjects = new ArrayList<String>();
+		for (IRDFStore store : stores) {
+			primaryObjects.addAll(rdf.getForPredicate(store,
+				"http://www.bioclipse.org/PrimaryObject", "http://www.bioclipse.org/hasURI"));
+		}
+		return primaryObjects;
+	}
+
+	/**
+	 * Returns two resources, each the same as the other.
+	 */
+	static String describe(String resource) {
+		String other = resource.endsWith("/1") ? base + "/chem/2" : base + "/chem/1";
+		return "<" + resource + "> <http://www.w3.org/2000/01/rdf-schema#label> \"" + resource + "\" .\n" +
+			"<" + resource + "> <http://www.w3.org/2002/07/owl#sameAs> <" + other + "> .\n";
+	}
+
+	static void send(HttpExchange exchange, int status, String turtle) throws IOException {
+		byte[] bytes = turtle.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/turtle");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(bytes);
+		output.close();
+	}
+
 }